@@ -37,7 +37,13 @@ CREATE TABLE books
     description  TEXT         NOT NULL,
     pages        INT          NOT NULL,
     PRIMARY KEY (id),
-    KEY          idx_books_isbn(isbn)
+    -- ISBN eindeutig (Bulk-Import meldet Duplikate), dient auch als Sortier-Index (isbn, id)
+    UNIQUE KEY   uk_books_isbn(isbn),
+    -- Sortier-Indizes für Keyset-Paginierung (Spalte, id)
+    KEY          idx_books_title(title, id),
+    KEY          idx_books_author(author, id),
+    -- Volltextsuche nach Relevanz (sortBy=relevance)
+    FULLTEXT KEY ft_books_title_author_description(title, author, description)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- loans
@@ -48,13 +54,78 @@ CREATE TABLE loans
     book_id     BIGINT       NOT NULL,
     borrowed_at TIMESTAMP(6) NOT NULL,
     returned_at TIMESTAMP(6) NULL,
+    -- Zeitpunkt, zu dem die aktive Ausleihe als überfällig erkannt wurde (OverdueLoanScanner)
+    overdue_at  TIMESTAMP(6) NULL,
+    -- book_id solange die Ausleihe aktiv ist, sonst NULL
+    active_book_id BIGINT AS (IF(returned_at IS NULL, book_id, NULL)) VIRTUAL,
     PRIMARY KEY (id),
-    KEY         idx_loans_user(user_id),
+    -- Ausleihen eines Benutzers nach Status und Ausleihdatum (Keyset-Paginierung), dient auch dem FK auf users
+    KEY         idx_loans_user_returned_borrowed(user_id, returned_at, borrowed_at),
     KEY         idx_loans_book(book_id),
+    -- zurückgegebene Ausleihen nach Rückgabedatum, für die Archivierung in Blöcken (LoanArchiver)
+    KEY         idx_loans_returned(returned_at, id),
+    -- aktive, noch nicht überfällige Ausleihen nach Ausleihdatum, damit ein Lauf des OverdueLoanScanner nur Kandidaten liest
+    KEY         idx_loans_overdue_candidates(returned_at, overdue_at, borrowed_at),
+    -- höchstens eine aktive Ausleihe pro Buch, auch bei parallelen Ausleihen über mehrere Backend-Knoten
+    UNIQUE KEY  uk_loans_active_book(active_book_id),
     CONSTRAINT fk_loans_user FOREIGN KEY (user_id) REFERENCES users (id),
     CONSTRAINT fk_loans_book FOREIGN KEY (book_id) REFERENCES books (id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- loan_history: zurückgegebene Ausleihen, von loans in Blöcken hierher verschoben (LoanArchiver),
+-- damit loans nur aktive und kürzlich zurückgegebene Ausleihen enthält
+CREATE TABLE loan_history
+(
+    id          BIGINT       NOT NULL,
+    user_id     BIGINT       NOT NULL,
+    book_id     BIGINT       NOT NULL,
+    borrowed_at TIMESTAMP(6) NOT NULL,
+    returned_at TIMESTAMP(6) NOT NULL,
+    overdue_at  TIMESTAMP(6) NULL,
+    PRIMARY KEY (id),
+    KEY         idx_loan_history_user_borrowed(user_id, borrowed_at),
+    KEY         idx_loan_history_book(book_id),
+    CONSTRAINT fk_loan_history_user FOREIGN KEY (user_id) REFERENCES users (id),
+    CONSTRAINT fk_loan_history_book FOREIGN KEY (book_id) REFERENCES books (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- loan_events: Outbox der Ausleihen und Rückgaben, in derselben Transaktion wie loans geschrieben.
+-- Die id ist der Offset des Änderungs-Feeds (/loans/changes), vergeben aus loan_event_sequence.
+-- Ohne FK auf loans, da Ausleihen nach loan_history verschoben werden
+CREATE TABLE loan_events
+(
+    id          BIGINT       NOT NULL,
+    loan_id     BIGINT       NOT NULL,
+    user_id     BIGINT       NOT NULL,
+    book_id     BIGINT       NOT NULL,
+    type        VARCHAR(16)  NOT NULL, -- BORROWED, RETURNED, OVERDUE
+    occurred_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- loan_event_sequence: letzter vergebener Offset von loan_events (eine Zeile). Schreibende Transaktionen erhöhen ihn
+-- als letzte Anweisung vor dem Commit, die Zeilensperre bis zum Commit sorgt dafür, dass Offsets in Commit-Reihenfolge
+-- sichtbar werden (LoanEventOutbox)
+CREATE TABLE loan_event_sequence
+(
+    id          TINYINT      NOT NULL,
+    last_offset BIGINT       NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+INSERT INTO loan_event_sequence (id, last_offset)
+VALUES (1, 0);
+
+-- job_checkpoints: Fortschritt periodischer Jobs (z.B. letzte bearbeitete Ausleihe-id), damit ein Lauf nach einem
+-- Neustart an dieser Stelle fortgesetzt wird
+CREATE TABLE job_checkpoints
+(
+    name       VARCHAR(64)  NOT NULL,
+    position   BIGINT       NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (name)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- Seed-Daten
 -- users
 INSERT INTO users (id, username, firstname, lastname, email)
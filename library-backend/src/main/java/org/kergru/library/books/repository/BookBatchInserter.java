@@ -0,0 +1,58 @@
+package org.kergru.library.books.repository;
+
+import java.util.List;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Inserts books with one multi-row INSERT statement per batch. Derived repository methods would insert row by row.
+ */
+@Repository
+public class BookBatchInserter {
+
+  private static final String INSERT = """
+      INSERT INTO books (isbn, title, author, published_at, publisher, language, description, pages)
+      VALUES\s""";
+
+  private final DatabaseClient databaseClient;
+
+  public BookBatchInserter(DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  /**
+   * Inserts all books in one statement, either all or none of them are inserted. Emits the number of inserted rows.
+   */
+  public Mono<Long> insert(List<BookEntity> books) {
+    StringBuilder sql = new StringBuilder(INSERT);
+    for (int i = 0; i < books.size(); i++) {
+      sql.append(i > 0 ? ", " : "")
+          .append("(:isbn").append(i)
+          .append(", :title").append(i)
+          .append(", :author").append(i)
+          .append(", :publishedAt").append(i)
+          .append(", :publisher").append(i)
+          .append(", :language").append(i)
+          .append(", :description").append(i)
+          .append(", :pages").append(i)
+          .append(')');
+    }
+
+    GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+    for (int i = 0; i < books.size(); i++) {
+      BookEntity b = books.get(i);
+      spec = spec
+          .bind("isbn" + i, b.isbn)
+          .bind("title" + i, b.title)
+          .bind("author" + i, b.author)
+          .bind("publishedAt" + i, b.publishedAt)
+          .bind("publisher" + i, b.publisher)
+          .bind("language" + i, b.language)
+          .bind("description" + i, b.description)
+          .bind("pages" + i, b.pages);
+    }
+    return spec.fetch().rowsUpdated();
+  }
+}
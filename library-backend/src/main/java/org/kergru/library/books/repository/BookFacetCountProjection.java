@@ -0,0 +1,42 @@
+package org.kergru.library.books.repository;
+
+public class BookFacetCountProjection {
+
+  private String language;
+  private String publisher;
+  private Long decade;
+  private Long bookCount;
+
+  // --- Getter / Setter ---
+  public String getLanguage() {
+    return language;
+  }
+
+  public void setLanguage(String language) {
+    this.language = language;
+  }
+
+  public String getPublisher() {
+    return publisher;
+  }
+
+  public void setPublisher(String publisher) {
+    this.publisher = publisher;
+  }
+
+  public Long getDecade() {
+    return decade;
+  }
+
+  public void setDecade(Long decade) {
+    this.decade = decade;
+  }
+
+  public Long getBookCount() {
+    return bookCount;
+  }
+
+  public void setBookCount(Long bookCount) {
+    this.bookCount = bookCount;
+  }
+}
@@ -0,0 +1,42 @@
+package org.kergru.library.books.repository;
+
+public class BookPopularityProjection {
+
+  private Long id;
+  private String title;
+  private String author;
+  private Long loanCount;
+
+  // --- Getter / Setter ---
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public void setTitle(String title) {
+    this.title = title;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public void setAuthor(String author) {
+    this.author = author;
+  }
+
+  public Long getLoanCount() {
+    return loanCount;
+  }
+
+  public void setLoanCount(Long loanCount) {
+    this.loanCount = loanCount;
+  }
+}
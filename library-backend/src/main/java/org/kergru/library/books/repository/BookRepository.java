@@ -1,60 +1,254 @@
 package org.kergru.library.books.repository;
 
+import java.util.Collection;
 import org.kergru.library.model.BookDto;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
-import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * List queries select all columns but the TEXT column description, {@link #findDescriptionsByIdIn} loads it on demand.
+ */
 public interface BookRepository extends ReactiveCrudRepository<BookDto, Long> {
 
   @Query("""
-        SELECT
-            b.id AS id,
-            b.isbn AS isbn,
-            b.title AS title,
-            b.author AS author,
-            b.published_at AS publishedAt,
-            b.publisher AS publisher,
-            b.language AS language,
-            b.description AS description,
-            b.pages AS pages,
-            l.id AS loan_id,
-            l.borrowed_at AS borrowed_at,
-            l.user_id AS borrower_id
+        SELECT b.*
         FROM books b
-        LEFT JOIN loans l ON b.id = l.book_id AND l.returned_at IS NULL
         WHERE b.isbn = :isbn
       """)
-  Mono<BookWithLoanProjection> findByIsbn(String isbn);
+  Mono<BookEntity> findByIsbn(String isbn);
 
   @Query("""
-    SELECT b.*, l.id AS loan_id, l.borrowed_at AS borrowed_at, l.user_id AS borrower_id
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
     FROM books b
-    LEFT JOIN loans l ON b.id = l.book_id AND l.returned_at IS NULL
     WHERE 
         (:searchString IS NULL OR 
          b.title LIKE CONCAT('%', :searchString, '%') OR 
          b.author LIKE CONCAT('%', :searchString, '%') OR 
          b.isbn LIKE CONCAT('%', :searchString, '%'))
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
     ORDER BY 
         CASE WHEN :sortBy = 'title' THEN b.title END ASC,
         CASE WHEN :sortBy = 'author' THEN b.author END ASC,
-        CASE WHEN :sortBy = 'isbn' THEN b.isbn END ASC
+        CASE WHEN :sortBy = 'isbn' THEN b.isbn END ASC,
+        b.id ASC
     LIMIT :size OFFSET :offset
     """)
-  Flux<BookWithLoanProjection> searchBooksWithJoinLoans(
+  Flux<BookEntity> searchBooks(
       @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade,
       @Param("size") int size,
       @Param("offset") long offset,
       @Param("sortBy") String sortBy
   );
 
+  /**
+   * Keyset variants of the search, one per sort column so that MySQL can walk the matching (column, id) index
+   * instead of skipping OFFSET rows and sorting. The total is not counted for these pages.
+   */
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
+    FROM books b
+    WHERE 
+        (:searchString IS NULL OR 
+         b.title LIKE CONCAT('%', :searchString, '%') OR 
+         b.author LIKE CONCAT('%', :searchString, '%') OR 
+         b.isbn LIKE CONCAT('%', :searchString, '%'))
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
+      AND (b.title > :afterKey OR (b.title = :afterKey AND b.id > :afterId))
+    ORDER BY b.title ASC, b.id ASC
+    LIMIT :size
+    """)
+  Flux<BookEntity> searchBooksAfterTitle(
+      @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade,
+      @Param("afterKey") String afterKey,
+      @Param("afterId") long afterId,
+      @Param("size") int size
+  );
+
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
+    FROM books b
+    WHERE 
+        (:searchString IS NULL OR 
+         b.title LIKE CONCAT('%', :searchString, '%') OR 
+         b.author LIKE CONCAT('%', :searchString, '%') OR 
+         b.isbn LIKE CONCAT('%', :searchString, '%'))
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
+      AND (b.author > :afterKey OR (b.author = :afterKey AND b.id > :afterId))
+    ORDER BY b.author ASC, b.id ASC
+    LIMIT :size
+    """)
+  Flux<BookEntity> searchBooksAfterAuthor(
+      @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade,
+      @Param("afterKey") String afterKey,
+      @Param("afterId") long afterId,
+      @Param("size") int size
+  );
+
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
+    FROM books b
+    WHERE 
+        (:searchString IS NULL OR 
+         b.title LIKE CONCAT('%', :searchString, '%') OR 
+         b.author LIKE CONCAT('%', :searchString, '%') OR 
+         b.isbn LIKE CONCAT('%', :searchString, '%'))
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
+      AND (b.isbn > :afterKey OR (b.isbn = :afterKey AND b.id > :afterId))
+    ORDER BY b.isbn ASC, b.id ASC
+    LIMIT :size
+    """)
+  Flux<BookEntity> searchBooksAfterIsbn(
+      @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade,
+      @Param("afterKey") String afterKey,
+      @Param("afterId") long afterId,
+      @Param("size") int size
+  );
+
+  /**
+   * Full text search on the FULLTEXT index over title, author and description, ordered by relevance.
+   */
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
+    FROM books b
+    WHERE MATCH(b.title, b.author, b.description) AGAINST (:searchString IN NATURAL LANGUAGE MODE)
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
+    ORDER BY
+        MATCH(b.title, b.author, b.description) AGAINST (:searchString IN NATURAL LANGUAGE MODE) DESC,
+        b.id ASC
+    LIMIT :size OFFSET :offset
+    """)
+  Flux<BookEntity> searchBooksByRelevance(
+      @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade,
+      @Param("size") int size,
+      @Param("offset") long offset
+  );
+
+  @Query("""
+    SELECT COUNT(b.id) FROM books b
+    WHERE MATCH(b.title, b.author, b.description) AGAINST (:searchString IN NATURAL LANGUAGE MODE)
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
+    """)
+  Mono<Long> countBooksByRelevance(
+      @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade
+  );
+
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
+    FROM books b
+    WHERE b.id IN (:ids)
+    """)
+  Flux<BookEntity> findAllByIdIn(@Param("ids") Collection<Long> ids);
+
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.published_at, b.publisher, b.language, b.pages
+    FROM books b
+    WHERE b.isbn IN (:isbns)
+    """)
+  Flux<BookEntity> findAllByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+  /**
+   * Returns only id and description of the books.
+   */
+  @Query("""
+    SELECT b.id, b.description
+    FROM books b
+    WHERE b.id IN (:ids)
+    """)
+  Flux<BookEntity> findDescriptionsByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * Number of books per language, publisher and decade, used to load the in-memory facet counts.
+   */
+  @Query("""
+    SELECT b.language AS language, b.publisher AS publisher,
+           CAST(FLOOR(b.published_at / 10) * 10 AS SIGNED) AS decade, COUNT(*) AS book_count
+    FROM books b
+    GROUP BY b.language, b.publisher, decade
+    """)
+  Flux<BookFacetCountProjection> countFacets();
+
+  /**
+   * Row count estimate from the table statistics, avoids a full COUNT for unfiltered searches.
+   */
+  @Query("""
+    SELECT CAST(COALESCE(t.TABLE_ROWS, 0) AS SIGNED)
+    FROM information_schema.TABLES t
+    WHERE t.TABLE_SCHEMA = DATABASE() AND t.TABLE_NAME = 'books'
+    """)
+  Mono<Long> estimateBookCount();
+
+  /**
+   * Returns the books following {@code afterId} in id order, used to stream the catalog in chunks.
+   */
+  @Query("""
+    SELECT b.*
+    FROM books b
+    WHERE b.id > :afterId
+    ORDER BY b.id
+    LIMIT :size
+    """)
+  Flux<BookEntity> findChunk(@Param("afterId") long afterId, @Param("size") int size);
+
+  /**
+   * Returns title, author and number of loans (including the archived ones) of the books following {@code afterId},
+   * used to load the suggestions.
+   */
+  @Query("""
+    SELECT b.id AS id, b.title AS title, b.author AS author,
+           (SELECT COUNT(*) FROM loans l WHERE l.book_id = b.id)
+             + (SELECT COUNT(*) FROM loan_history h WHERE h.book_id = b.id) AS loan_count
+    FROM books b
+    WHERE b.id > :afterId
+    ORDER BY b.id
+    LIMIT :size
+    """)
+  Flux<BookPopularityProjection> findPopularityChunk(@Param("afterId") long afterId, @Param("size") int size);
+
+  /**
+   * Returns the searchable and facet columns of the books following {@code afterId}, used to load the in-memory search index.
+   */
+  @Query("""
+    SELECT b.id, b.isbn, b.title, b.author, b.language, b.publisher, b.published_at
+    FROM books b
+    WHERE b.id > :afterId
+    ORDER BY b.id
+    LIMIT :size
+    """)
+  Flux<BookEntity> findIndexChunk(@Param("afterId") long afterId, @Param("size") int size);
+
   @Query("""
     SELECT COUNT(b.id) FROM books b
     WHERE 
@@ -62,20 +256,14 @@ public interface BookRepository extends ReactiveCrudRepository<BookDto, Long> {
          b.title LIKE CONCAT('%', :searchString, '%') OR 
          b.author LIKE CONCAT('%', :searchString, '%') OR 
          b.isbn LIKE CONCAT('%', :searchString, '%'))
+      AND (:language IS NULL OR b.language = :language)
+      AND (:publisher IS NULL OR b.publisher = :publisher)
+      AND (:decade IS NULL OR b.published_at BETWEEN :decade AND :decade + 9)
     """)
-  Mono<Long> countBooks(@Param("searchString") String searchString);
-
-  default Mono<Page<BookWithLoanProjection>> searchBooksPaged(String searchString, int page, int size, String sortBy) {
-    String search = StringUtils.hasText(searchString) ? searchString : null;
-    long offset = (long) page * size;
-
-    return searchBooksWithJoinLoans(search, size, offset, sortBy)
-        .collectList()
-        .zipWith(countBooks(search))
-        .map(tuple -> new PageImpl<>(
-            tuple.getT1(),
-            PageRequest.of(page, size),
-            tuple.getT2()
-        ));
-  }
+  Mono<Long> countBooks(
+      @Param("searchString") String searchString,
+      @Param("language") String language,
+      @Param("publisher") String publisher,
+      @Param("decade") Integer decade
+  );
 }
@@ -1,49 +1,166 @@
 package org.kergru.library.books.rest;
 
+import java.time.Duration;
+import org.kergru.library.books.search.BookFilter;
+import org.kergru.library.books.service.BookFields;
+import org.kergru.library.books.service.BookImportService;
+import org.kergru.library.books.service.BookImportService.Format;
 import org.kergru.library.books.service.BookService;
+import org.kergru.library.loans.service.AvailabilityEvents;
+import org.kergru.library.model.BookAvailabilityDto;
 import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BookImportReportDto;
+import org.kergru.library.model.BookSuggestionDto;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.paging.CountMode;
+import org.kergru.library.web.ETags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/library/api")
 public class BookController {
 
+  private static final String TEXT_CSV_VALUE = "text/csv";
+
   private final BookService bookService;
 
-  public BookController(BookService bookService) {
+  private final BookImportService bookImportService;
+
+  private final AvailabilityEvents availabilityEvents;
+
+  private final Duration keepAlive;
+
+  public BookController(
+      BookService bookService,
+      BookImportService bookImportService,
+      AvailabilityEvents availabilityEvents,
+      @Value("${library.books.availability.keep-alive:PT30S}") Duration keepAlive
+  ) {
     this.bookService = bookService;
+    this.bookImportService = bookImportService;
+    this.availabilityEvents = availabilityEvents;
+    this.keepAlive = keepAlive;
   }
 
   /**
-   * Returns paged search result of books by title, author, isbn
+   * Returns paged search result of books by title, author, isbn.
+   * If the cursor {@code after} (nextCursor of a previous page) is given, the page following it is returned instead of {@code page}.
+   * sortBy {@code relevance} runs a full text search over title, author and description ordered by relevance.
+   * {@code count} is one of exact, estimate or none, see {@link CountMode}.
+   * {@code language}, {@code publisher} and {@code decade} (first year, e.g. 1990) filter the result,
+   * the page contains the facet counts of these fields where available.
+   * {@code fields} (comma separated, e.g. title,author) restricts the returned book fields, default all.
+   * The page carries an ETag, a request with a matching {@code If-None-Match} is answered with 304.
+   * While the loan status of the books is still loading after startup a 503 is returned, also by the other book reads.
    */
   @PreAuthorize("isAuthenticated()")
   @GetMapping("/books")
-  public Mono<PageResponseDto<BookDto>> searchBooks(
+  public Mono<ResponseEntity<PageResponseDto<BookDto>>> searchBooks(
       @RequestParam(required = false) String searchString,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
-      @RequestParam(defaultValue = "title") String sortBy
+      @RequestParam(defaultValue = "title") String sortBy,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "exact") String count,
+      @RequestParam(required = false) String language,
+      @RequestParam(required = false) String publisher,
+      @RequestParam(required = false) Integer decade,
+      @RequestParam(required = false) String fields
+  ) {
+    BookFilter filter = new BookFilter(language, publisher, decade);
+    return Mono.fromCallable(() -> CountMode.of(count))
+        .zipWith(Mono.fromCallable(() -> BookFields.parse(fields)))
+        .flatMap(t -> bookService.searchBooks(searchString, page, size, sortBy, after, t.getT1(), filter, t.getT2()))
+        .map(ETags::ok)
+        .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+        .onErrorMap(IllegalStateException.class, BookController::unavailable);
+  }
+
+  /**
+   * Streams the whole catalog as newline delimited JSON in id order, for exports and catalog syncs.
+   */
+  @PreAuthorize("isAuthenticated()")
+  @GetMapping(value = "/books/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<BookDto> streamBooks() {
+    return bookService.streamBooks()
+        .onErrorMap(IllegalStateException.class, BookController::unavailable);
+  }
+
+  /**
+   * Server-sent events of borrowed and returned books, so clients can update the availability of the books shown
+   * instead of polling the search. Only changes after subscribing are sent. A comment is sent every
+   * {@code keep-alive} to keep idle connections open through proxies.
+   */
+  @PreAuthorize("isAuthenticated()")
+  @GetMapping(value = "/books/availability/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<BookAvailabilityDto>> streamAvailability() {
+    Flux<ServerSentEvent<BookAvailabilityDto>> events = availabilityEvents.stream()
+        .map(e -> ServerSentEvent.builder(e).event("availability").build());
+    Flux<ServerSentEvent<BookAvailabilityDto>> heartbeats = Flux.interval(keepAlive)
+        .map(i -> ServerSentEvent.<BookAvailabilityDto>builder().comment("keep-alive").build());
+    return Flux.merge(events, heartbeats);
+  }
+
+  /**
+   * Typeahead suggestions: titles and authors with a word starting with {@code prefix}, most borrowed first.
+   */
+  @PreAuthorize("isAuthenticated()")
+  @GetMapping("/books/suggest")
+  public Flux<BookSuggestionDto> suggest(
+      @RequestParam String prefix,
+      @RequestParam(defaultValue = "10") int limit
   ) {
-    return bookService.searchBooks(searchString, page, size, sortBy);
+    return bookService.suggest(prefix, limit);
   }
 
   /**
-   * Returns a single book by ISBN
+   * Imports books from an NDJSON or CSV request body, only accessible by the librarian.
+   * Invalid and rejected rows are listed in the report, the other rows are imported.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @PostMapping(value = "/books/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+  public Mono<BookImportReportDto> importBooks(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+      @RequestBody Flux<String> lines
+  ) {
+    Format format = contentType.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE)) ? Format.CSV : Format.NDJSON;
+    return bookImportService.importBooks(lines, format)
+        .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+  }
+
+  /**
+   * Returns a single book by ISBN, with an ETag over the book and its loan status (304 if unchanged).
    */
   @PreAuthorize("isAuthenticated()")
   @GetMapping("/books/{isbn}")
-  public Mono<BookDto> getBook(@PathVariable String isbn) {
+  public Mono<ResponseEntity<BookDto>> getBook(@PathVariable String isbn) {
     return bookService.findByIsbn(isbn)
-        .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found")));
+        .map(ETags::ok)
+        .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Book not found")))
+        .onErrorMap(IllegalStateException.class, BookController::unavailable);
+  }
+
+  /**
+   * The loan status of the books is not loaded yet, see {@code ActiveLoanIndex}.
+   */
+  private static ResponseStatusException unavailable(IllegalStateException e) {
+    return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
   }
 }
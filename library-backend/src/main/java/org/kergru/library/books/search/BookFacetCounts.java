@@ -0,0 +1,66 @@
+package org.kergru.library.books.search;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Number of books per combination of language, publisher and decade, kept in memory so facet counts of unfiltered
+ * searches need no GROUP BY per request.
+ *
+ * <p>Loaded with one GROUP BY query once the application is ready and incremented when books are imported.
+ * Until loading has finished {@link #facets(BookFilter)} returns null.
+ */
+@Component
+public class BookFacetCounts {
+
+  private final BookRepository bookRepository;
+
+  private final Map<FacetKey, Long> counts = new ConcurrentHashMap<>();
+
+  private volatile boolean ready;
+
+  public BookFacetCounts(BookRepository bookRepository) {
+    this.bookRepository = bookRepository;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    bookRepository.countFacets()
+        .doOnNext(row -> counts.merge(
+            new FacetKey(row.getLanguage(), row.getPublisher(), row.getDecade().intValue()), row.getBookCount(), Long::sum))
+        .then()
+        .subscribe(
+            v -> { },
+            err -> System.err.println("Error loading book facet counts: " + err.getMessage()),
+            () -> {
+              ready = true;
+              System.out.println("Book facet counts loaded: " + counts.size() + " combinations");
+            });
+  }
+
+  public void add(Collection<BookEntity> books) {
+    books.forEach(b -> counts.merge(new FacetKey(b.language, b.publisher, BookFilter.decadeOf(b.publishedAt)), 1L, Long::sum));
+  }
+
+  /**
+   * Returns the facet counts of all books for the filter, null if the counts are not loaded yet.
+   */
+  public Map<String, Map<String, Long>> facets(BookFilter filter) {
+    if (!ready) {
+      return null;
+    }
+    Facets facets = new Facets(filter);
+    counts.forEach((key, count) -> facets.add(key.language(), key.publisher(), key.decade(), count));
+    return facets.toMap();
+  }
+
+  private record FacetKey(String language, String publisher, int decade) {
+
+  }
+}
@@ -0,0 +1,46 @@
+package org.kergru.library.books.search;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Facet filters of a book search, null values do not filter. {@code decade} is the first year of the decade.
+ */
+public record BookFilter(
+    String language,
+    String publisher,
+    Integer decade
+) {
+
+  public static final BookFilter NONE = new BookFilter(null, null, null);
+
+  public BookFilter {
+    language = StringUtils.hasText(language) ? language : null;
+    publisher = StringUtils.hasText(publisher) ? publisher : null;
+    decade = decade != null ? decadeOf(decade) : null;
+  }
+
+  public boolean isEmpty() {
+    return language == null && publisher == null && decade == null;
+  }
+
+  /**
+   * Whether a book with the given values passes the filters, {@code ignore} names a facet whose filter is skipped.
+   */
+  boolean matches(String language, String publisher, int decade, String ignore) {
+    return (this.language == null || Facets.LANGUAGE.equals(ignore) || this.language.equalsIgnoreCase(language))
+        && (this.publisher == null || Facets.PUBLISHER.equals(ignore) || this.publisher.equalsIgnoreCase(publisher))
+        && (this.decade == null || Facets.DECADE.equals(ignore) || this.decade == decade);
+  }
+
+  /**
+   * First year of the decade of {@code year}, {@link Facets#UNKNOWN_DECADE} if the year is unknown.
+   */
+  public static int decadeOf(Integer year) {
+    return year != null ? Math.floorDiv(year, 10) * 10 : Facets.UNKNOWN_DECADE;
+  }
+
+  @Override
+  public String toString() {
+    return language + "|" + publisher + "|" + decade;
+  }
+}
@@ -0,0 +1,362 @@
+package org.kergru.library.books.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.paging.PageCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-memory trigram inverted index over title, author and isbn of all books, also holding language, publisher and
+ * decade for facet filters and counts.
+ *
+ * <p>Each normalized field (lower case, without diacritics) is split into overlapping trigrams, every trigram maps to the
+ * ascending list of document ordinals containing it. A substring search intersects the posting lists of the query's
+ * trigrams and verifies the remaining candidates, so MySQL is only needed to hydrate the requested page.
+ *
+ * <p>The index is loaded in id ordered chunks once the application is ready and kept current via {@link #index(Collection)}
+ * and {@link #remove(long)}. Until loading has finished {@link #isReady()} is false and callers use the database search.
+ * Removed and re-indexed books leave dead ordinals behind, once they make up a quarter of all ordinals the index is
+ * rebuilt from the live documents, so memory and scan time stay proportional to the number of books.
+ *
+ * <p>Searches intersect posting lists or, for queries shorter than a trigram, scan all documents, callers run them
+ * off the event loop.
+ */
+@Component
+public class BookSearchIndex {
+
+  private static final int LOAD_CHUNK_SIZE = 5_000;
+
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+  // rebuild once at least this many and a quarter of all ordinals are dead
+  private static final int COMPACT_MIN_DEAD = 1_024;
+
+  private final BookRepository bookRepository;
+
+  private final boolean enabled;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // ordinal -> document, null once the book was removed or re-indexed
+  private final List<IndexedBook> docs = new ArrayList<>();
+
+  private final Map<Long, Integer> ordinalById = new HashMap<>();
+
+  private final Map<Long, Postings> postings = new HashMap<>();
+
+  private int deadOrdinals;
+
+  private volatile boolean ready;
+
+  public BookSearchIndex(
+      BookRepository bookRepository,
+      @Value("${library.books.search-index.enabled:true}") boolean enabled
+  ) {
+    this.bookRepository = bookRepository;
+    this.enabled = enabled;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    if (!enabled) {
+      return;
+    }
+    loadChunks()
+        .doOnNext(this::index)
+        .then()
+        .subscribe(
+            v -> { },
+            err -> System.err.println("Error loading book search index: " + err.getMessage()),
+            () -> {
+              ready = true;
+              System.out.println("Book search index loaded: " + size() + " books");
+            });
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Adds the books to the index, books already indexed are replaced.
+   */
+  public void index(Collection<BookEntity> books) {
+    lock.writeLock().lock();
+    try {
+      books.forEach(this::add);
+      compactIfNeeded();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(long bookId) {
+    lock.writeLock().lock();
+    try {
+      removeInternal(bookId);
+      compactIfNeeded();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return ordinalById.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Number of assigned ordinals, live and dead.
+   */
+  int ordinals() {
+    lock.readLock().lock();
+    try {
+      return docs.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the ids of the books whose title, author or isbn contains {@code query} and that pass the filter,
+   * ordered by {@code sortBy} and id, together with the facet counts of all books containing {@code query}.
+   * The page starts behind the cursor {@code after} if given, otherwise at {@code offset}.
+   */
+  public SearchHits search(String query, String sortBy, PageCursor after, long offset, int limit, BookFilter filter) {
+    String q = normalize(query);
+    Comparator<IndexedBook> order = IndexedBook.order(sortBy);
+    IndexedBook probe = after != null ? IndexedBook.probe(sortBy, normalize(after.key()), after.id()) : null;
+    long wanted = offset + limit;
+
+    lock.readLock().lock();
+    try {
+      // max-heap holding the first `wanted` matches in sort order
+      PriorityQueue<IndexedBook> heap = new PriorityQueue<>(order.reversed());
+      Facets facets = new Facets(filter);
+      long total = 0;
+      long remaining = 0;
+
+      int[] candidates = candidates(q);
+      int count = candidates != null ? candidates.length : docs.size();
+      for (int i = 0; i < count; i++) {
+        IndexedBook doc = docs.get(candidates != null ? candidates[i] : i);
+        if (doc == null || !doc.contains(q)) {
+          continue;
+        }
+        facets.add(doc.language(), doc.publisher(), doc.decade(), 1);
+        if (!filter.matches(doc.language(), doc.publisher(), doc.decade(), null)) {
+          continue;
+        }
+        total++;
+        if (probe != null && order.compare(doc, probe) <= 0) {
+          continue;
+        }
+        remaining++;
+        if (heap.size() < wanted) {
+          heap.offer(doc);
+        } else if (order.compare(doc, heap.peek()) < 0) {
+          heap.poll();
+          heap.offer(doc);
+        }
+      }
+
+      List<IndexedBook> top = new ArrayList<>(heap);
+      top.sort(order);
+      int from = (int) Math.min(offset, top.size());
+      List<Long> ids = top.subList(from, top.size()).stream().map(IndexedBook::id).toList();
+
+      return new SearchHits(total, ids, remaining > wanted, facets.toMap());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Flux<List<BookEntity>> loadChunks() {
+    return bookRepository.findIndexChunk(0L, LOAD_CHUNK_SIZE).collectList()
+        .expand(chunk -> chunk.size() < LOAD_CHUNK_SIZE
+            ? Mono.empty()
+            : bookRepository.findIndexChunk(chunk.getLast().id, LOAD_CHUNK_SIZE).collectList());
+  }
+
+  /**
+   * Returns the ordinals of all documents containing every trigram of the query, or null if the query is too short
+   * for trigrams and all documents have to be checked.
+   */
+  private int[] candidates(String q) {
+    if (q.length() < 3) {
+      return null;
+    }
+    Set<Long> grams = new LinkedHashSet<>();
+    for (int i = 0; i + 3 <= q.length(); i++) {
+      grams.add(trigram(q, i));
+    }
+    List<Postings> lists = new ArrayList<>(grams.size());
+    for (Long gram : grams) {
+      Postings p = postings.get(gram);
+      if (p == null) {
+        return new int[0];
+      }
+      lists.add(p);
+    }
+    // intersect starting with the shortest list to keep intermediate results small
+    lists.sort(Comparator.comparingInt(p -> p.size));
+    int[] result = Arrays.copyOf(lists.getFirst().ords, lists.getFirst().size);
+    for (int i = 1; i < lists.size() && result.length > 0; i++) {
+      result = intersect(result, lists.get(i));
+    }
+    return result;
+  }
+
+  private static int[] intersect(int[] a, Postings b) {
+    int[] out = new int[Math.min(a.length, b.size)];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.size) {
+      if (a[i] < b.ords[j]) {
+        i++;
+      } else if (a[i] > b.ords[j]) {
+        j++;
+      } else {
+        out[n++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(out, n);
+  }
+
+  private void add(BookEntity book) {
+    removeInternal(book.id);
+    addDoc(new IndexedBook(
+        book.id,
+        normalize(book.title),
+        normalize(book.author),
+        normalize(book.isbn),
+        book.language,
+        book.publisher,
+        BookFilter.decadeOf(book.publishedAt)));
+  }
+
+  private void addDoc(IndexedBook doc) {
+    int ordinal = docs.size();
+    docs.add(doc);
+    ordinalById.put(doc.id(), ordinal);
+
+    addTrigrams(doc.title(), ordinal);
+    addTrigrams(doc.author(), ordinal);
+    addTrigrams(doc.isbn(), ordinal);
+  }
+
+  private void removeInternal(long bookId) {
+    // posting lists keep the stale ordinal, it is skipped because the document slot is empty
+    Integer ordinal = ordinalById.remove(bookId);
+    if (ordinal != null) {
+      docs.set(ordinal, null);
+      deadOrdinals++;
+    }
+  }
+
+  /**
+   * Reassigns dense ordinals to the live documents in their current order and rebuilds the posting lists.
+   */
+  private void compactIfNeeded() {
+    if (deadOrdinals < COMPACT_MIN_DEAD || deadOrdinals * 4L < docs.size()) {
+      return;
+    }
+    List<IndexedBook> live = docs.stream().filter(Objects::nonNull).toList();
+    docs.clear();
+    ordinalById.clear();
+    postings.clear();
+    deadOrdinals = 0;
+    live.forEach(this::addDoc);
+  }
+
+  private void addTrigrams(String value, int ordinal) {
+    for (int i = 0; i + 3 <= value.length(); i++) {
+      postings.computeIfAbsent(trigram(value, i), k -> new Postings()).add(ordinal);
+    }
+  }
+
+  private static long trigram(String s, int i) {
+    return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+  }
+
+  static String normalize(String value) {
+    if (value == null) {
+      return "";
+    }
+    String decomposed = Normalizer.normalize(value.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+    return DIACRITICS.matcher(decomposed).replaceAll("");
+  }
+
+  private record IndexedBook(
+      long id, String title, String author, String isbn, String language, String publisher, int decade) {
+
+    boolean contains(String q) {
+      return title.contains(q) || author.contains(q) || isbn.contains(q);
+    }
+
+    static Comparator<IndexedBook> order(String sortBy) {
+      Comparator<IndexedBook> byKey = switch (sortBy) {
+        case "author" -> Comparator.comparing(IndexedBook::author);
+        case "isbn" -> Comparator.comparing(IndexedBook::isbn);
+        default -> Comparator.comparing(IndexedBook::title);
+      };
+      return byKey.thenComparingLong(IndexedBook::id);
+    }
+
+    static IndexedBook probe(String sortBy, String key, long id) {
+      return switch (sortBy) {
+        case "author" -> new IndexedBook(id, "", key, "", null, null, Facets.UNKNOWN_DECADE);
+        case "isbn" -> new IndexedBook(id, "", "", key, null, null, Facets.UNKNOWN_DECADE);
+        default -> new IndexedBook(id, key, "", "", null, null, Facets.UNKNOWN_DECADE);
+      };
+    }
+  }
+
+  /**
+   * Ascending, duplicate free list of document ordinals. Ordinals are assigned in increasing order,
+   * so appending keeps the list sorted.
+   */
+  private static final class Postings {
+
+    private int[] ords = new int[4];
+
+    private int size;
+
+    void add(int ordinal) {
+      if (size > 0 && ords[size - 1] == ordinal) {
+        return;
+      }
+      if (size == ords.length) {
+        ords = Arrays.copyOf(ords, size + (size >> 1) + 1);
+      }
+      ords[size++] = ordinal;
+    }
+  }
+}
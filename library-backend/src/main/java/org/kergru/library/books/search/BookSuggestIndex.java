@@ -0,0 +1,352 @@
+package org.kergru.library.books.search;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookPopularityProjection;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanEventProjection;
+import org.kergru.library.loans.service.LoanChangeFeed;
+import org.kergru.library.model.BookSuggestionDto;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Typeahead suggestions for titles and authors, ranked by popularity (number of loans).
+ *
+ * <p>Radix tree (prefix tree with compressed single-child chains) over the normalized titles and authors. Every word
+ * start is a key, so "cod" suggests "Clean Code". Each node keeps the {@link #TOP_K} most popular entries below it,
+ * a lookup only walks down the prefix and copies that list. The list is allocated on the first entry and grows with its
+ * content, most nodes deep in the tree hold only a few entries.
+ *
+ * <p>Popularity only grows (a loan adds one), so the per-node lists stay exact when an entry's score is offered
+ * again to the nodes on its key paths after each loan. The loan counts are loaded in one snapshot together with its
+ * offset in the {@link LoanChangeFeed}, later loans are counted from the BORROWED events after that offset, so each
+ * loan is counted once, also loans on other nodes.
+ */
+@Component
+public class BookSuggestIndex {
+
+  public static final int TOP_K = 10;
+
+  private static final int LOAD_CHUNK_SIZE = 5_000;
+
+  private static final String FIELD_TITLE = "title";
+
+  private static final String FIELD_AUTHOR = "author";
+
+  private static final Comparator<Entry> BY_POPULARITY =
+      Comparator.comparingLong((Entry e) -> e.score).reversed().thenComparing(e -> e.value);
+
+  private final BookRepository bookRepository;
+
+  private final LoanChangeFeed loanChangeFeed;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Node root = new Node("");
+
+  // normalized value -> entry, one entry per distinct title and author
+  private final Map<String, Entry> titles = new HashMap<>();
+
+  private final Map<String, Entry> authors = new HashMap<>();
+
+  private volatile boolean ready;
+
+  private Disposable subscription;
+
+  public BookSuggestIndex(BookRepository bookRepository, LoanChangeFeed loanChangeFeed) {
+    this.bookRepository = bookRepository;
+    this.loanChangeFeed = loanChangeFeed;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    subscription = loanChangeFeed.snapshot(loadChunks()
+            .doOnNext(chunk -> {
+              lock.writeLock().lock();
+              try {
+                chunk.forEach(b -> add(b.getTitle(), b.getAuthor(), b.getLoanCount()));
+              } finally {
+                lock.writeLock().unlock();
+              }
+            })
+            .count())
+        .doOnNext(snapshot -> {
+          ready = true;
+          System.out.println("Book suggestions loaded: " + titles.size() + " titles, " + authors.size() + " authors");
+        })
+        .flatMapMany(snapshot -> loanChangeFeed.followEvents(snapshot.getT1()))
+        .subscribe(
+            this::apply,
+            err -> System.err.println("Error loading book suggestions: " + err.getMessage()));
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (subscription != null) {
+      subscription.dispose();
+    }
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Returns up to {@code limit} (at most {@link #TOP_K}) titles and authors with a word starting with {@code prefix},
+   * most popular first.
+   */
+  public List<BookSuggestionDto> suggest(String prefix, int limit) {
+    String p = BookSearchIndex.normalize(prefix).strip();
+    if (p.isEmpty() || limit <= 0) {
+      return List.of();
+    }
+
+    lock.readLock().lock();
+    try {
+      Node node = root;
+      int i = 0;
+      while (i < p.length()) {
+        Node child = node.child(p.charAt(i));
+        if (child == null) {
+          return List.of();
+        }
+        int n = Math.min(child.edge.length(), p.length() - i);
+        if (!p.regionMatches(i, child.edge, 0, n)) {
+          return List.of();
+        }
+        i += n;
+        node = child;
+      }
+      return Arrays.stream(node.top, 0, Math.min(node.top.length, limit))
+          .map(e -> new BookSuggestionDto(e.value, e.field))
+          .toList();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds titles and authors of new books.
+   */
+  public void index(Collection<BookEntity> books) {
+    lock.writeLock().lock();
+    try {
+      books.forEach(b -> add(b.title, b.author, 0));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Counts the loan of a BORROWED event of the change feed for the popularity of the book's title and authors.
+   */
+  void apply(LoanEventProjection event) {
+    if (!LoanEventEntity.BORROWED.equals(event.getType())) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      add(event.getTitle(), event.getAuthor(), 1);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private Flux<List<BookPopularityProjection>> loadChunks() {
+    return bookRepository.findPopularityChunk(0L, LOAD_CHUNK_SIZE).collectList()
+        .expand(chunk -> chunk.size() < LOAD_CHUNK_SIZE
+            ? Mono.empty()
+            : bookRepository.findPopularityChunk(chunk.getLast().getId(), LOAD_CHUNK_SIZE).collectList());
+  }
+
+  private void add(String title, String author, long loans) {
+    if (title != null) {
+      addEntry(titles, title, FIELD_TITLE, loans);
+    }
+    if (author != null) {
+      // multiple authors are separated by ';'
+      for (String name : author.split(";")) {
+        if (!name.isBlank()) {
+          addEntry(authors, name.strip(), FIELD_AUTHOR, loans);
+        }
+      }
+    }
+  }
+
+  private void addEntry(Map<String, Entry> entries, String value, String field, long loans) {
+    String key = BookSearchIndex.normalize(value);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(value, field, loans);
+      entries.put(key, entry);
+      for (String wordStart : wordStarts(key)) {
+        insert(wordStart, entry);
+      }
+    } else if (loans > 0) {
+      entry.score += loans;
+      for (String wordStart : wordStarts(key)) {
+        offerAlongPath(wordStart, entry);
+      }
+    }
+  }
+
+  private static List<String> wordStarts(String key) {
+    List<String> starts = new ArrayList<>();
+    for (int i = 0; i < key.length(); i++) {
+      if (Character.isLetterOrDigit(key.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(key.charAt(i - 1)))) {
+        starts.add(key.substring(i));
+      }
+    }
+    return starts;
+  }
+
+  private void insert(String key, Entry entry) {
+    Node node = root;
+    int i = 0;
+    while (i < key.length()) {
+      Node child = node.child(key.charAt(i));
+      if (child == null) {
+        child = new Node(key.substring(i));
+        node.addChild(child);
+      } else {
+        int common = commonPrefixLength(child.edge, key, i);
+        if (common < child.edge.length()) {
+          child = node.split(child, common);
+        }
+      }
+      i += child.edge.length();
+      node = child;
+      node.offer(entry);
+    }
+  }
+
+  private void offerAlongPath(String key, Entry entry) {
+    Node node = root;
+    int i = 0;
+    while (i < key.length()) {
+      node = node.child(key.charAt(i));
+      i += node.edge.length();
+      node.offer(entry);
+    }
+  }
+
+  private static int commonPrefixLength(String edge, String key, int offset) {
+    int n = Math.min(edge.length(), key.length() - offset);
+    int i = 0;
+    while (i < n && edge.charAt(i) == key.charAt(offset + i)) {
+      i++;
+    }
+    return i;
+  }
+
+  private static final class Entry {
+
+    private final String value;
+
+    private final String field;
+
+    private long score;
+
+    Entry(String value, String field, long score) {
+      this.value = value;
+      this.field = field;
+      this.score = score;
+    }
+  }
+
+  private static final class Node {
+
+    private static final char[] NO_LABELS = new char[0];
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private String edge;
+
+    private char[] labels = NO_LABELS;
+
+    private Node[] children = NO_CHILDREN;
+
+    // most popular entries of the subtree, sorted by BY_POPULARITY, at most TOP_K
+    private Entry[] top = NO_ENTRIES;
+
+    Node(String edge) {
+      this.edge = edge;
+    }
+
+    Node child(char c) {
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] == c) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    void addChild(Node child) {
+      labels = Arrays.copyOf(labels, labels.length + 1);
+      children = Arrays.copyOf(children, children.length + 1);
+      labels[labels.length - 1] = child.edge.charAt(0);
+      children[children.length - 1] = child;
+    }
+
+    /**
+     * Splits the edge to {@code child} after {@code at} characters and returns the new intermediate node.
+     */
+    Node split(Node child, int at) {
+      Node middle = new Node(child.edge.substring(0, at));
+      middle.top = child.top.length == 0 ? NO_ENTRIES : child.top.clone();
+      child.edge = child.edge.substring(at);
+      middle.addChild(child);
+      for (int i = 0; i < children.length; i++) {
+        if (children[i] == child) {
+          children[i] = middle;
+        }
+      }
+      return middle;
+    }
+
+    void offer(Entry entry) {
+      int pos = -1;
+      for (int i = 0; i < top.length; i++) {
+        if (top[i] == entry) {
+          pos = i;
+          break;
+        }
+      }
+      if (pos < 0) {
+        if (top.length < TOP_K) {
+          top = Arrays.copyOf(top, top.length + 1);
+          pos = top.length - 1;
+        } else if (BY_POPULARITY.compare(entry, top[TOP_K - 1]) < 0) {
+          pos = TOP_K - 1;
+        } else {
+          return;
+        }
+        top[pos] = entry;
+      }
+      // the entry's score only grew, move it up to its place
+      while (pos > 0 && BY_POPULARITY.compare(top[pos], top[pos - 1]) < 0) {
+        Entry swap = top[pos - 1];
+        top[pos - 1] = top[pos];
+        top[pos] = swap;
+        pos--;
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.kergru.library.books.search;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Counts facet values of books matching a search.
+ *
+ * <p>Facets use multi-select semantics: the counts of a facet apply all filters except the facet's own, so the
+ * client can show the alternatives of a selected value.
+ */
+public final class Facets {
+
+  public static final String LANGUAGE = "language";
+
+  public static final String PUBLISHER = "publisher";
+
+  public static final String DECADE = "decade";
+
+  static final int UNKNOWN_DECADE = Integer.MIN_VALUE;
+
+  private final BookFilter filter;
+
+  private final Map<String, Long> languages = new HashMap<>();
+
+  private final Map<String, Long> publishers = new HashMap<>();
+
+  private final Map<String, Long> decades = new HashMap<>();
+
+  public Facets(BookFilter filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Adds {@code count} books with the given values, the books must already match the search string.
+   */
+  public void add(String language, String publisher, int decade, long count) {
+    if (language != null && filter.matches(language, publisher, decade, LANGUAGE)) {
+      languages.merge(language, count, Long::sum);
+    }
+    if (publisher != null && filter.matches(language, publisher, decade, PUBLISHER)) {
+      publishers.merge(publisher, count, Long::sum);
+    }
+    if (decade != UNKNOWN_DECADE && filter.matches(language, publisher, decade, DECADE)) {
+      decades.merge(String.valueOf(decade), count, Long::sum);
+    }
+  }
+
+  /**
+   * Returns facet name -> value -> count, values ordered by descending count.
+   */
+  public Map<String, Map<String, Long>> toMap() {
+    Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+    facets.put(LANGUAGE, sorted(languages));
+    facets.put(PUBLISHER, sorted(publishers));
+    facets.put(DECADE, sorted(decades));
+    return facets;
+  }
+
+  private static Map<String, Long> sorted(Map<String, Long> counts) {
+    Map<String, Long> sorted = new LinkedHashMap<>();
+    counts.entrySet().stream()
+        .sorted(Entry.<String, Long>comparingByValue().reversed().thenComparing(Entry.comparingByKey()))
+        .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+    return sorted;
+  }
+}
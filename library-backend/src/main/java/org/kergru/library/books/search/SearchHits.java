@@ -0,0 +1,17 @@
+package org.kergru.library.books.search;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of an index search: number of all matches, ids of the requested page in sort order,
+ * whether more matches follow the page and the facet counts.
+ */
+public record SearchHits(
+    long total,
+    List<Long> ids,
+    boolean hasNext,
+    Map<String, Map<String, Long>> facets
+) {
+
+}
@@ -0,0 +1,74 @@
+package org.kergru.library.books.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.kergru.library.model.BookDto;
+import org.springframework.util.StringUtils;
+
+/**
+ * Sparse fieldset of {@link BookDto}, parsed from the {@code fields} request parameter (comma separated property names).
+ * Fields not requested are null and omitted from the JSON. The isbn identifies the book and is always included.
+ * The TEXT column {@code description} is only read from the database if requested.
+ */
+public final class BookFields {
+
+  public static final String DESCRIPTION = "description";
+
+  private static final List<String> NAMES = List.of(
+      "isbn", "title", "author", "publishedAt", "publisher", "language", "pages", DESCRIPTION, "loanStatus");
+
+  public static final BookFields ALL = new BookFields(Set.copyOf(NAMES));
+
+  private final Set<String> fields;
+
+  private BookFields(Set<String> fields) {
+    this.fields = fields;
+  }
+
+  /**
+   * Parses the parameter value, all fields if it is empty. Throws an {@link IllegalArgumentException} for unknown fields.
+   */
+  public static BookFields parse(String value) {
+    if (!StringUtils.hasText(value)) {
+      return ALL;
+    }
+    Set<String> fields = Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(f -> !f.isEmpty())
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+    List<String> unknown = fields.stream().filter(f -> !NAMES.contains(f)).toList();
+    if (!unknown.isEmpty()) {
+      throw new IllegalArgumentException("Unknown fields: " + String.join(", ", unknown));
+    }
+    fields.add("isbn");
+    return new BookFields(fields);
+  }
+
+  public boolean includes(String field) {
+    return fields.contains(field);
+  }
+
+  public boolean includesDescription() {
+    return includes(DESCRIPTION);
+  }
+
+  public BookDto apply(BookDto b) {
+    if (this == ALL) {
+      return b;
+    }
+    return new BookDto(
+        b.isbn(),
+        includes("title") ? b.title() : null,
+        includes("author") ? b.author() : null,
+        includes("publishedAt") ? b.publishedAt() : null,
+        includes("publisher") ? b.publisher() : null,
+        includes("language") ? b.language() : null,
+        includes("pages") ? b.pages() : null,
+        includes(DESCRIPTION) ? b.description() : null,
+        includes("loanStatus") ? b.loanStatus() : null
+    );
+  }
+}
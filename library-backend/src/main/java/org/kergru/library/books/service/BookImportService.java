@@ -0,0 +1,324 @@
+package org.kergru.library.books.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.kergru.library.books.repository.BookBatchInserter;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.books.search.BookFacetCounts;
+import org.kergru.library.books.search.BookSearchIndex;
+import org.kergru.library.books.search.BookSuggestIndex;
+import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BookImportErrorDto;
+import org.kergru.library.model.BookImportReportDto;
+import org.kergru.library.paging.SearchCountCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Imports books from NDJSON (one {@link BookDto} per line) or CSV (header line with the {@link BookDto} property names,
+ * one book per line) streams.
+ *
+ * <p>Lines are parsed as they arrive, valid rows are written in multi-row INSERT batches with a bounded number of
+ * batches in flight. Invalid rows and rows rejected by the database (e.g. duplicate ISBN) are reported and do not
+ * abort the import: if a batch fails, its rows are inserted one by one to find the failing ones.
+ */
+@Service
+public class BookImportService {
+
+  public enum Format {
+    NDJSON,
+    CSV
+  }
+
+  private static final int MAX_REPORTED_ERRORS = 1_000;
+
+  private static final List<String> CSV_COLUMNS =
+      List.of("isbn", "title", "author", "publishedAt", "publisher", "language", "pages", "description");
+
+  private final BookBatchInserter batchInserter;
+
+  private final BookRepository bookRepository;
+
+  private final BookSearchIndex searchIndex;
+
+  private final SearchCountCache countCache;
+
+  private final BookFacetCounts facetCounts;
+
+  private final BookSuggestIndex suggestIndex;
+
+  private final ObjectMapper objectMapper;
+
+  private final int batchSize;
+
+  private final int maxBatchesInFlight;
+
+  public BookImportService(
+      BookBatchInserter batchInserter,
+      BookRepository bookRepository,
+      BookSearchIndex searchIndex,
+      SearchCountCache countCache,
+      BookFacetCounts facetCounts,
+      BookSuggestIndex suggestIndex,
+      ObjectMapper objectMapper,
+      @Value("${library.books.import.batch-size:500}") int batchSize,
+      @Value("${library.books.import.max-batches-in-flight:4}") int maxBatchesInFlight
+  ) {
+    this.batchInserter = batchInserter;
+    this.bookRepository = bookRepository;
+    this.searchIndex = searchIndex;
+    this.countCache = countCache;
+    this.facetCounts = facetCounts;
+    this.suggestIndex = suggestIndex;
+    this.objectMapper = objectMapper;
+    this.batchSize = batchSize;
+    this.maxBatchesInFlight = maxBatchesInFlight;
+  }
+
+  public Mono<BookImportReportDto> importBooks(Flux<String> lines, Format format) {
+    Flux<Tuple2<Long, String>> numbered = lines.index();
+    Flux<ParsedRow> rows = format == Format.CSV ? parseCsv(numbered) : parseNdjson(numbered);
+
+    return rows
+        .buffer(batchSize)
+        .flatMap(this::importBatch, maxBatchesInFlight)
+        .collect(Report::new, Report::add)
+        .map(Report::toDto);
+  }
+
+  private Flux<ParsedRow> importBatch(List<ParsedRow> batch) {
+    List<ParsedRow> invalid = batch.stream().filter(r -> r.error() != null).toList();
+    List<ParsedRow> valid = batch.stream().filter(r -> r.error() == null).toList();
+    if (valid.isEmpty()) {
+      return Flux.fromIterable(invalid);
+    }
+
+    Flux<ParsedRow> inserted = batchInserter.insert(valid.stream().map(ParsedRow::book).toList())
+        .flatMapMany(count -> afterInsert(valid).thenMany(Flux.fromIterable(valid)))
+        .onErrorResume(e -> Flux.fromIterable(valid).concatMap(this::importSingle));
+
+    return Flux.fromIterable(invalid).concatWith(inserted);
+  }
+
+  private Mono<ParsedRow> importSingle(ParsedRow row) {
+    return batchInserter.insert(List.of(row.book()))
+        .then(afterInsert(List.of(row)))
+        .thenReturn(row)
+        .onErrorResume(e -> Mono.just(row.failed(e.getMessage())));
+  }
+
+  /**
+   * Makes the inserted books visible to the search index, the suggestions, the facet counts and the cached search counts.
+   */
+  private Mono<Void> afterInsert(List<ParsedRow> rows) {
+    return bookRepository.findAllByIsbnIn(rows.stream().map(ParsedRow::isbn).toList())
+        .collectList()
+        .doOnNext(books -> {
+          searchIndex.index(books);
+          facetCounts.add(books);
+          suggestIndex.index(books);
+          countCache.invalidate(BookService.COUNT_SCOPE);
+          countCache.invalidate(BookService.COUNT_SCOPE_FULLTEXT);
+        })
+        // the rows are stored, a failed refresh must not make them count as failed
+        .doOnError(err -> System.err.println("Error refreshing search index after import: " + err.getMessage()))
+        .onErrorComplete()
+        .then();
+  }
+
+  private Flux<ParsedRow> parseNdjson(Flux<Tuple2<Long, String>> lines) {
+    return lines
+        .filter(line -> StringUtils.hasText(line.getT2()))
+        .map(line -> {
+          long lineNumber = line.getT1() + 1;
+          try {
+            BookDto dto = objectMapper.readValue(line.getT2(), BookDto.class);
+            return dto != null ? ParsedRow.of(lineNumber, toEntity(dto)) : ParsedRow.invalid(lineNumber, null, "Empty row");
+          } catch (JsonProcessingException e) {
+            return ParsedRow.invalid(lineNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+          }
+        });
+  }
+
+  private Flux<ParsedRow> parseCsv(Flux<Tuple2<Long, String>> lines) {
+    return lines.switchOnFirst((first, all) -> {
+      if (!first.hasValue()) {
+        return all.thenMany(Flux.<ParsedRow>empty());
+      }
+      List<String> header = splitCsvLine(first.get().getT2()).stream().map(String::trim).toList();
+      List<String> missing = CSV_COLUMNS.stream().filter(c -> !"description".equals(c) && !header.contains(c)).toList();
+      if (!missing.isEmpty()) {
+        return Flux.error(new IllegalArgumentException("CSV header is missing columns: " + String.join(", ", missing)));
+      }
+
+      return all.skip(1)
+          .filter(line -> StringUtils.hasText(line.getT2()))
+          .map(line -> parseCsvRow(line.getT1() + 1, line.getT2(), header));
+    });
+  }
+
+  private ParsedRow parseCsvRow(long lineNumber, String line, List<String> header) {
+    List<String> fields;
+    try {
+      fields = splitCsvLine(line);
+    } catch (IllegalArgumentException e) {
+      return ParsedRow.invalid(lineNumber, null, e.getMessage());
+    }
+    if (fields.size() != header.size()) {
+      return ParsedRow.invalid(lineNumber, null, "Expected " + header.size() + " fields but got " + fields.size());
+    }
+
+    Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < header.size(); i++) {
+      values.put(header.get(i), fields.get(i));
+    }
+    String isbn = values.get("isbn");
+    try {
+      return ParsedRow.of(lineNumber, toEntity(new BookDto(
+          isbn,
+          values.get("title"),
+          values.get("author"),
+          parseInt(values.get("publishedAt"), "publishedAt"),
+          values.get("publisher"),
+          values.get("language"),
+          parseInt(values.get("pages"), "pages"),
+          values.get("description"),
+          null
+      )));
+    } catch (IllegalArgumentException e) {
+      return ParsedRow.invalid(lineNumber, isbn, e.getMessage());
+    }
+  }
+
+  /**
+   * Splits a CSV line at commas outside of double quotes, a double quote inside a quoted field is written as "".
+   * Fields must not contain line breaks.
+   */
+  static List<String> splitCsvLine(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Unterminated quoted field");
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static Integer parseInt(String value, String column) {
+    if (!StringUtils.hasText(value)) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(column + " is not a number: " + value);
+    }
+  }
+
+  private static BookEntity toEntity(BookDto dto) {
+    var book = new BookEntity();
+    book.isbn = trim(dto.isbn());
+    book.title = trim(dto.title());
+    book.author = trim(dto.author());
+    book.publishedAt = dto.publishedAt();
+    book.publisher = trim(dto.publisher());
+    book.language = trim(dto.language());
+    book.pages = dto.pages();
+    book.description = dto.description() != null ? dto.description() : "";
+    return book;
+  }
+
+  private static String trim(String value) {
+    return value != null ? value.trim() : null;
+  }
+
+  /**
+   * Returns why the book cannot be stored, null if it is valid. Lengths follow the books table.
+   */
+  private static String validate(BookEntity b) {
+    String error = text(b.isbn, "isbn", 32);
+    if (error == null) error = text(b.title, "title", 255);
+    if (error == null) error = text(b.author, "author", 255);
+    if (error == null) error = text(b.publisher, "publisher", 255);
+    if (error == null) error = text(b.language, "language", 32);
+    if (error == null && b.publishedAt == null) error = "publishedAt is required";
+    if (error == null && (b.pages == null || b.pages <= 0)) error = "pages must be a positive number";
+    return error;
+  }
+
+  private static String text(String value, String column, int maxLength) {
+    if (!StringUtils.hasText(value)) {
+      return column + " is required";
+    }
+    return value.length() > maxLength ? column + " is longer than " + maxLength + " characters" : null;
+  }
+
+  private record ParsedRow(long line, String isbn, BookEntity book, String error) {
+
+    static ParsedRow of(long line, BookEntity book) {
+      return new ParsedRow(line, book.isbn, book, validate(book));
+    }
+
+    static ParsedRow invalid(long line, String isbn, String error) {
+      return new ParsedRow(line, isbn, null, error);
+    }
+
+    ParsedRow failed(String error) {
+      return new ParsedRow(line, isbn, book, error);
+    }
+  }
+
+  private static final class Report {
+
+    private long received;
+
+    private long imported;
+
+    private final List<BookImportErrorDto> errors = new ArrayList<>();
+
+    void add(ParsedRow row) {
+      received++;
+      if (row.error() == null) {
+        imported++;
+      } else if (errors.size() < MAX_REPORTED_ERRORS) {
+        errors.add(new BookImportErrorDto(row.line(), row.isbn(), row.error()));
+      }
+    }
+
+    BookImportReportDto toDto() {
+      // failed rows beyond MAX_REPORTED_ERRORS are only counted
+      errors.sort((a, b) -> Long.compare(a.line(), b.line()));
+      return new BookImportReportDto(received, imported, received - imported, errors);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.kergru.library.books.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Bounded cache of books by ISBN, used by the book detail endpoint and by borrowing.
+ *
+ * <p>Concurrent lookups of the same ISBN share one database query. Entries are evicted by size and expire after the TTL.
+ * The loan state is not part of the entry, it comes from the {@link org.kergru.library.loans.service.ActiveLoanIndex},
+ * so borrowing and returning do not invalidate anything. Book rows are only inserted by the import, never updated, so
+ * entries need no invalidation either. Hit and miss counts are published as {@code cache.*} metrics
+ * with the tag {@code cache=books.byIsbn}.
+ */
+@Component
+public class BookLookupCache {
+
+  private final BookRepository bookRepository;
+
+  private final AsyncCache<String, BookEntity> cache;
+
+  public BookLookupCache(
+      BookRepository bookRepository,
+      MeterRegistry meterRegistry,
+      @Value("${library.books.lookup-cache.ttl:PT10M}") Duration ttl,
+      @Value("${library.books.lookup-cache.max-size:10000}") long maxSize
+  ) {
+    this.bookRepository = bookRepository;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl)
+        .recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "books.byIsbn");
+  }
+
+  /**
+   * Returns the book, empty if there is no book with the ISBN.
+   * Empty and failed lookups are not cached. A cancelled subscriber does not cancel the shared lookup.
+   */
+  public Mono<BookEntity> get(String isbn) {
+    return Mono.fromFuture(() -> cache.get(isbn, (key, executor) -> bookRepository.findByIsbn(key).toFuture()), true);
+  }
+}
@@ -1,58 +1,322 @@
 package org.kergru.library.books.service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import org.kergru.library.books.repository.BookEntity;
 import org.kergru.library.books.repository.BookRepository;
-import org.kergru.library.books.repository.BookWithLoanProjection;
+import org.kergru.library.books.search.BookFacetCounts;
+import org.kergru.library.books.search.BookFilter;
+import org.kergru.library.books.search.BookSearchIndex;
+import org.kergru.library.books.search.BookSuggestIndex;
+import org.kergru.library.loans.service.ActiveLoanIndex;
+import org.kergru.library.loans.service.ActiveLoanIndex.ActiveLoan;
 import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BookSuggestionDto;
 import org.kergru.library.model.LoanStatusDto;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.paging.CountMode;
+import org.kergru.library.paging.PageCursor;
+import org.kergru.library.paging.SearchCountCache;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Service
 public class BookService {
 
+  private static final Set<String> SORT_COLUMNS = Set.of("title", "author", "isbn");
+
+  private static final String SORT_RELEVANCE = "relevance";
+
+  // prefix of the cursor sortBy for cursors made by the search index, see decodeCursor
+  private static final String INDEX_CURSOR = "index:";
+
+  private static final int STREAM_CHUNK_SIZE = 1_000;
+
+  static final String COUNT_SCOPE = "books";
+
+  static final String COUNT_SCOPE_FULLTEXT = "books-fulltext";
+
   private final BookRepository bookRepository;
 
-  public BookService(BookRepository bookRepository) {
+  private final BookSearchIndex searchIndex;
+
+  private final SearchCountCache countCache;
+
+  private final BookLookupCache lookupCache;
+
+  private final ActiveLoanIndex activeLoans;
+
+  private final BookFacetCounts facetCounts;
+
+  private final BookSuggestIndex suggestIndex;
+
+  public BookService(
+      BookRepository bookRepository,
+      BookSearchIndex searchIndex,
+      SearchCountCache countCache,
+      BookLookupCache lookupCache,
+      ActiveLoanIndex activeLoans,
+      BookFacetCounts facetCounts,
+      BookSuggestIndex suggestIndex
+  ) {
     this.bookRepository = bookRepository;
+    this.searchIndex = searchIndex;
+    this.countCache = countCache;
+    this.lookupCache = lookupCache;
+    this.activeLoans = activeLoans;
+    this.facetCounts = facetCounts;
+    this.suggestIndex = suggestIndex;
+  }
+
+  /**
+   * Searches books by page number, or by keyset cursor if {@code after} is given.
+   * Every page carries the cursor of its last row, so clients can switch to cursor paging at any page.
+   * Searches with a search string are answered by the in-memory search index once it is loaded,
+   * sortBy {@code relevance} uses the MySQL full text index instead (page numbers only).
+   * A cursor is only accepted by the path that made it, as the index and MySQL order strings differently; a cursor
+   * of the index is rejected once a search falls back to the database, a database cursor stays on the database.
+   * The database paths fetch one row more than requested to determine {@code last}, the total is counted as
+   * requested by {@code count}, except for cursor pages from the database, which report page 0 and no total.
+   * Facet counts for the filter are returned without a search string (in-memory counts) and for index searches,
+   * the other paths return no facets.
+   * Only the requested {@code fields} are returned, the description is only loaded if requested.
+   */
+  public Mono<PageResponseDto<BookDto>> searchBooks(
+      String searchStr, int page, int size, String sortBy, String after, CountMode count, BookFilter filter,
+      BookFields fields) {
+
+    // the loan status of the books comes from the active loan index
+    return activeLoans.whenLoaded()
+        .then(Mono.defer(() -> search(searchStr, page, size, sortBy, after, count, filter, fields)));
+  }
+
+  private Mono<PageResponseDto<BookDto>> search(
+      String searchStr, int page, int size, String sortBy, String after, CountMode count, BookFilter filter,
+      BookFields fields) {
+
+    String search = StringUtils.hasText(searchStr) ? searchStr : null;
+    long offset = (long) page * size;
+
+    if (SORT_RELEVANCE.equals(sortBy) && search != null) {
+      if (after != null) {
+        return Mono.error(new IllegalArgumentException("Cursor paging is not supported for sortBy " + SORT_RELEVANCE));
+      }
+      return bookRepository.searchBooksByRelevance(
+              search, filter.language(), filter.publisher(), filter.decade(), size + 1, offset)
+          .collectList()
+          .flatMap(rows -> withDescriptions(rows, fields))
+          .zipWith(total(COUNT_SCOPE_FULLTEXT, search, filter, count, () -> bookRepository.countBooksByRelevance(
+              search, filter.language(), filter.publisher(), filter.decade())))
+          .map(tuple -> toPage(tuple.getT1(), page, size, tuple.getT2(), page == 0, SORT_RELEVANCE, null, fields));
+    }
+
+    String sort = SORT_COLUMNS.contains(sortBy) ? sortBy : "title";
+
+    PageCursor cursor;
+    try {
+      cursor = after != null ? decodeCursor(after, sort) : null;
+    } catch (IllegalArgumentException e) {
+      return Mono.error(e);
+    }
+
+    // a cursor is only valid on the path that made it, the index orders normalized strings while MySQL uses the
+    // column collation, so the other path would skip or repeat rows after the cursor
+    boolean indexCursor = cursor != null && cursor.sortBy().startsWith(INDEX_CURSOR);
+    boolean indexed = search != null && searchIndex.isReady();
+    if (indexCursor && !indexed) {
+      return Mono.error(new IllegalArgumentException("Cursor is no longer valid, start again from the first page"));
+    }
+    if (indexed && (cursor == null || indexCursor)) {
+      return searchIndexed(search, page, size, sort, cursor, filter, fields);
+    }
+
+    var facets = search == null ? facetCounts.facets(filter) : null;
+
+    if (cursor != null) {
+      // page numbers and totals mean nothing for keyset pages, counting would scan all matches on every page
+      return searchBooksAfter(search, filter, cursor, size + 1)
+          .collectList()
+          .flatMap(list -> withDescriptions(list, fields))
+          .map(rows -> toPage(rows, 0, size, PageResponseDto.UNKNOWN_TOTAL, false, sort, facets, fields));
+    }
+
+    return bookRepository.searchBooks(
+            search, filter.language(), filter.publisher(), filter.decade(), size + 1, offset, sort)
+        .collectList()
+        .flatMap(list -> withDescriptions(list, fields))
+        .zipWith(total(COUNT_SCOPE, search, filter, count, () -> bookRepository.countBooks(
+            search, filter.language(), filter.publisher(), filter.decade())))
+        .map(tuple -> toPage(tuple.getT1(), page, size, tuple.getT2(), page == 0, sort, facets, fields));
+  }
+
+  /**
+   * Keyset page following the cursor, one query per sort column so that MySQL walks the (column, id) index.
+   */
+  private Flux<BookEntity> searchBooksAfter(String search, BookFilter filter, PageCursor cursor, int limit) {
+    return switch (cursor.sortBy()) {
+      case "author" -> bookRepository.searchBooksAfterAuthor(
+          search, filter.language(), filter.publisher(), filter.decade(), cursor.key(), cursor.id(), limit);
+      case "isbn" -> bookRepository.searchBooksAfterIsbn(
+          search, filter.language(), filter.publisher(), filter.decade(), cursor.key(), cursor.id(), limit);
+      default -> bookRepository.searchBooksAfterTitle(
+          search, filter.language(), filter.publisher(), filter.decade(), cursor.key(), cursor.id(), limit);
+    };
   }
 
-  public Mono<PageResponseDto<BookDto>> searchBooks(String searchStr, int page, int size, String sortBy) {
+  /**
+   * Streams all books in id order. The driver buffers each result set completely, so the catalog is read in
+   * id keyset chunks and the next chunk is only queried once the subscriber has consumed the previous one.
+   */
+  public Flux<BookDto> streamBooks() {
+    return activeLoans.whenLoaded().then(bookRepository.findChunk(0L, STREAM_CHUNK_SIZE).collectList())
+        .expand(chunk -> chunk.size() < STREAM_CHUNK_SIZE
+            ? Mono.empty()
+            : bookRepository.findChunk(chunk.getLast().id, STREAM_CHUNK_SIZE).collectList())
+        .flatMapIterable(chunk -> chunk, 1)
+        .map(this::toDto);
+  }
 
-    return bookRepository.searchBooksPaged(searchStr, page, size, sortBy)
-        .map(p -> new PageResponseDto<>(
-            p.getContent().stream().map(this::toDto).collect(Collectors.toList()),
-            p.getNumber(),
-            p.getSize(),
-            p.getTotalPages(),
-            p.getTotalElements(),
-            p.isFirst(),
-            p.isLast(),
-            p.getNumberOfElements(),
-            p.isEmpty()
-        ));
+  /**
+   * Typeahead suggestions for titles and authors, empty until the suggestions are loaded.
+   */
+  public Flux<BookSuggestionDto> suggest(String prefix, int limit) {
+    return Flux.fromIterable(suggestIndex.suggest(prefix, Math.min(limit, BookSuggestIndex.TOP_K)));
   }
 
   public Mono<BookDto> findByIsbn(String isbn) {
-    return bookRepository.findByIsbn(isbn).map(this::toDto);
+    return activeLoans.whenLoaded().then(lookupCache.get(isbn)).map(this::toDto);
+  }
+
+  /**
+   * Resolves the matching ids of the requested page from the search index and loads only these rows from the database.
+   * The index knows the exact number of matches, so the total is always reported.
+   */
+  private Mono<PageResponseDto<BookDto>> searchIndexed(
+      String searchStr, int page, int size, String sortBy, PageCursor cursor, BookFilter filter, BookFields fields) {
+
+    long offset = cursor != null ? 0 : (long) page * size;
+    return Mono.fromCallable(() -> searchIndex.search(searchStr, sortBy, cursor, offset, size, filter))
+        .subscribeOn(Schedulers.parallel()) // CPU bound, not on the event loop
+        .flatMap(hits -> hydrate(hits.ids())
+            .flatMap(rows -> withDescriptions(rows, fields))
+            .map(rows -> toPage(
+                rows, cursor != null ? 0 : page, size, hits.total(), cursor == null && page == 0, !hits.hasNext(),
+                INDEX_CURSOR + sortBy, hits.facets(), fields)));
+  }
+
+  private Mono<List<BookEntity>> hydrate(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return Mono.just(List.of());
+    }
+    return bookRepository.findAllByIdIn(ids)
+        .collectMap(b -> b.id)
+        .map(byId -> ids.stream().map(byId::get).filter(Objects::nonNull).toList());
+  }
+
+  /**
+   * The list queries skip the TEXT column description, it is loaded with a second query only if requested.
+   */
+  private Mono<List<BookEntity>> withDescriptions(List<BookEntity> rows, BookFields fields) {
+    if (!fields.includesDescription() || rows.isEmpty()) {
+      return Mono.just(rows);
+    }
+    return bookRepository.findDescriptionsByIdIn(rows.stream().map(b -> b.id).toList())
+        .collectMap(b -> b.id, b -> b.description)
+        .map(descriptions -> {
+          rows.forEach(b -> b.description = descriptions.get(b.id));
+          return rows;
+        });
+  }
+
+  private Mono<Long> total(String scope, String search, BookFilter filter, CountMode count, Supplier<Mono<Long>> query) {
+    return switch (count) {
+      case NONE -> Mono.just((long) PageResponseDto.UNKNOWN_TOTAL);
+      case ESTIMATE -> search == null && filter.isEmpty()
+          ? bookRepository.estimateBookCount()
+          : countCache.get(scope, search, filter.toString(), query);
+      case EXACT -> countCache.get(scope, search, filter.toString(), query);
+    };
+  }
+
+  /**
+   * Builds the page from {@code size + 1} fetched rows, the surplus row only signals that a next page exists.
+   */
+  private PageResponseDto<BookDto> toPage(
+      List<BookEntity> fetched, int number, int size, long total, boolean first, String sortBy,
+      Map<String, Map<String, Long>> facets, BookFields fields) {
+
+    boolean hasNext = fetched.size() > size;
+    List<BookEntity> rows = hasNext ? fetched.subList(0, size) : fetched;
+    // table statistics may lag behind, the estimate must at least cover the rows seen so far
+    long seen = (long) number * size + fetched.size();
+    return toPage(
+        rows, number, size, total == PageResponseDto.UNKNOWN_TOTAL ? total : Math.max(total, seen), first, !hasNext, sortBy,
+        facets, fields);
+  }
+
+  private PageResponseDto<BookDto> toPage(
+      List<BookEntity> rows, int number, int size, long total, boolean first, boolean last, String sortBy,
+      Map<String, Map<String, Long>> facets, BookFields fields) {
+
+    return new PageResponseDto<>(
+        rows.stream().map(this::toDto).map(fields::apply).collect(Collectors.toList()),
+        number,
+        size,
+        total == PageResponseDto.UNKNOWN_TOTAL ? PageResponseDto.UNKNOWN_TOTAL : (int) Math.ceil((double) total / size),
+        total,
+        first,
+        last,
+        rows.size(),
+        rows.isEmpty(),
+        !last && !rows.isEmpty() && SORT_COLUMNS.contains(sortBy.substring(sortBy.indexOf(':') + 1))
+            ? cursorOf(rows.getLast(), sortBy) : null,
+        facets
+    );
+  }
+
+  /**
+   * Cursors of the search index carry the sortBy with the prefix {@code index:}.
+   */
+  private PageCursor decodeCursor(String after, String sortBy) {
+    PageCursor cursor = PageCursor.decode(after);
+    if (!cursor.sortBy().equals(sortBy) && !cursor.sortBy().equals(INDEX_CURSOR + sortBy)) {
+      throw new IllegalArgumentException("Cursor does not match sortBy " + sortBy);
+    }
+    return cursor;
+  }
+
+  private String cursorOf(BookEntity b, String sortBy) {
+    String key = switch (sortBy.substring(sortBy.indexOf(':') + 1)) {
+      case "author" -> b.author;
+      case "isbn" -> b.isbn;
+      default -> b.title;
+    };
+    return new PageCursor(sortBy, key, b.id).encode();
   }
 
-  private BookDto toDto(BookWithLoanProjection b) {
+  private BookDto toDto(BookEntity b) {
+    ActiveLoan loan = activeLoans.get(b.id);
 
     return new BookDto(
-        b.getIsbn(),
-        b.getTitle(),
-        b.getAuthor(),
-        b.getPublishedAt(),
-        b.getPublisher(),
-        b.getLanguage(),
-        b.getPages(),
-        b.getDescription(),
+        b.isbn,
+        b.title,
+        b.author,
+        b.publishedAt,
+        b.publisher,
+        b.language,
+        b.pages,
+        b.description,
         new LoanStatusDto(
-            b.getLoanId() == null,
-            b.getLoanId() != null ? b.getBorrowerId() : null,
-            b.getLoanId() != null ? b.getBorrowedAt() : null
+            loan == null,
+            loan != null ? loan.borrowerId() : null,
+            loan != null ? loan.borrowedAt() : null
         )
     );
   }
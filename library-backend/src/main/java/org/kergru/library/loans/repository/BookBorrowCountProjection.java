@@ -0,0 +1,42 @@
+package org.kergru.library.loans.repository;
+
+public class BookBorrowCountProjection {
+
+  private Long bookId;
+  private String isbn;
+  private String title;
+  private Long borrowCount;
+
+  // --- Getter / Setter ---
+  public Long getBookId() {
+    return bookId;
+  }
+
+  public void setBookId(Long bookId) {
+    this.bookId = bookId;
+  }
+
+  public String getIsbn() {
+    return isbn;
+  }
+
+  public void setIsbn(String isbn) {
+    this.isbn = isbn;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public void setTitle(String title) {
+    this.title = title;
+  }
+
+  public Long getBorrowCount() {
+    return borrowCount;
+  }
+
+  public void setBorrowCount(Long borrowCount) {
+    this.borrowCount = borrowCount;
+  }
+}
@@ -0,0 +1,24 @@
+package org.kergru.library.loans.repository;
+
+public class DailyBorrowCountProjection {
+
+  private Long day;
+  private Long borrowCount;
+
+  // --- Getter / Setter ---
+  public Long getDay() {
+    return day;
+  }
+
+  public void setDay(Long day) {
+    this.day = day;
+  }
+
+  public Long getBorrowCount() {
+    return borrowCount;
+  }
+
+  public void setBorrowCount(Long borrowCount) {
+    this.borrowCount = borrowCount;
+  }
+}
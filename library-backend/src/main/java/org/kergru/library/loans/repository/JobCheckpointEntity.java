@@ -0,0 +1,20 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Progress of a periodic job, e.g. the id of the last processed loan.
+ */
+@Table(name = "job_checkpoints")
+public class JobCheckpointEntity {
+
+  @Id
+  public String name;
+
+  public Long position;
+
+  public Instant updatedAt;
+
+}
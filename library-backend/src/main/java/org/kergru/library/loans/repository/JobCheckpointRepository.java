@@ -0,0 +1,30 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Mono;
+
+public interface JobCheckpointRepository extends ReactiveCrudRepository<JobCheckpointEntity, String> {
+
+  @Query("""
+    SELECT c.position
+    FROM job_checkpoints c
+    WHERE c.name = :name
+    """)
+  Mono<Long> findPosition(@Param("name") String name);
+
+  @Modifying
+  @Query("""
+    INSERT INTO job_checkpoints (name, position, updated_at)
+    VALUES (:name, :position, :updatedAt)
+    ON DUPLICATE KEY UPDATE position = VALUES(position), updated_at = VALUES(updated_at)
+    """)
+  Mono<Long> savePosition(
+      @Param("name") String name,
+      @Param("position") long position,
+      @Param("updatedAt") Instant updatedAt
+  );
+}
@@ -0,0 +1,32 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Outbox entry of a borrow, return or detected overdue loan, the id is the offset in the change feed. Written by
+ * {@code LoanEventOutbox}.
+ */
+@Table(name = "loan_events")
+public class LoanEventEntity {
+
+  public static final String BORROWED = "BORROWED";
+
+  public static final String RETURNED = "RETURNED";
+
+  public static final String OVERDUE = "OVERDUE";
+
+  @Id
+  public Long id;
+
+  public Long loanId;
+
+  public Long userId;
+
+  public Long bookId;
+
+  public String type;
+
+  public Instant occurredAt;
+}
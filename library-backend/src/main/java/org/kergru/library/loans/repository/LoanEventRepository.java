@@ -0,0 +1,62 @@
+package org.kergru.library.loans.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface LoanEventRepository extends ReactiveCrudRepository<LoanEventEntity, Long> {
+
+  /**
+   * Adds {@code count} to the last offset and locks the sequence row until commit, see {@code LoanEventOutbox}.
+   */
+  @Modifying
+  @Query("""
+    UPDATE loan_event_sequence
+    SET last_offset = last_offset + :count
+    WHERE id = 1
+    """)
+  Mono<Long> reserveOffsets(@Param("count") int count);
+
+  @Query("""
+    SELECT s.last_offset
+    FROM loan_event_sequence s
+    WHERE s.id = 1
+    """)
+  Mono<Long> findLastOffset();
+
+  /**
+   * Writes one event per loan with a single statement, the offsets start at {@code firstOffset} in loan id order.
+   */
+  @Modifying
+  @Query("""
+    INSERT INTO loan_events (id, loan_id, user_id, book_id, type, occurred_at)
+    SELECT :firstOffset - 1 + ROW_NUMBER() OVER (ORDER BY l.id), l.id, l.user_id, l.book_id, :type, :occurredAt
+    FROM loans l
+    WHERE l.id IN (:loanIds)
+    """)
+  Mono<Long> insertForLoans(
+      @Param("loanIds") Collection<Long> loanIds,
+      @Param("type") String type,
+      @Param("occurredAt") Instant occurredAt,
+      @Param("firstOffset") long firstOffset
+  );
+
+  /**
+   * Returns the events after the offset {@code after} in offset order, with user name, isbn, title and author.
+   */
+  @Query("""
+    SELECT e.id, e.type, e.loan_id, e.user_id, e.book_id, u.username, b.isbn, b.title, b.author, e.occurred_at
+    FROM loan_events e
+    JOIN users u ON u.id = e.user_id
+    JOIN books b ON b.id = e.book_id
+    WHERE e.id > :after
+    ORDER BY e.id
+    LIMIT :limit
+    """)
+  Flux<LoanEventProjection> findAfter(@Param("after") long after, @Param("limit") int limit);
+}
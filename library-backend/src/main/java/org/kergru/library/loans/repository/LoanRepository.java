@@ -1,32 +1,268 @@
 package org.kergru.library.loans.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface LoanRepository extends ReactiveCrudRepository<LoanEntity, Long> {
 
+  /**
+   * Returns a page of the user's loans, newest first, from {@code loans} and the archived loans in {@code loan_history}.
+   * Both tables are read separately with their own limit and merged, the book columns exclude the TEXT column description.
+   * {@code status} is null, 'active' or 'returned', the borrowedAt range is [from, to), all filters are optional.
+   * The keyset cursor (afterBorrowedAt, afterId) is the last loan of the previous page.
+   */
   @Query("""
         SELECT
-            l.id AS id,
-            l.user_id AS user_id,
-            l.book_id AS book_id,
-            l.borrowed_at AS borrowed_at,
-            l.returned_at AS returned_at,
+            p.id AS id,
+            p.user_id AS user_id,
+            p.book_id AS book_id,
+            p.borrowed_at AS borrowed_at,
+            p.returned_at AS returned_at,
             b.title AS title,
             b.author AS author,
             b.isbn AS isbn,
             b.publisher AS publisher,
             b.pages AS pages,
             b.published_at AS published_at,
-            b.language AS language,
-            b.description AS description
-        FROM loans l
-        JOIN books b ON l.book_id = b.id
-        WHERE l.user_id = :userId
+            b.language AS language
+        FROM (
+            (SELECT l.id, l.user_id, l.book_id, l.borrowed_at, l.returned_at
+             FROM loans l
+             WHERE l.user_id = :userId
+               AND (:status IS NULL
+                    OR (:status = 'active' AND l.returned_at IS NULL)
+                    OR (:status = 'returned' AND l.returned_at IS NOT NULL))
+               AND (:from IS NULL OR l.borrowed_at >= :from)
+               AND (:to IS NULL OR l.borrowed_at < :to)
+               AND (:afterBorrowedAt IS NULL
+                    OR l.borrowed_at < :afterBorrowedAt
+                    OR (l.borrowed_at = :afterBorrowedAt AND l.id < :afterId))
+             ORDER BY l.borrowed_at DESC, l.id DESC
+             LIMIT :size)
+            UNION ALL
+            (SELECT h.id, h.user_id, h.book_id, h.borrowed_at, h.returned_at
+             FROM loan_history h
+             WHERE h.user_id = :userId
+               AND (:status IS NULL OR :status = 'returned')
+               AND (:from IS NULL OR h.borrowed_at >= :from)
+               AND (:to IS NULL OR h.borrowed_at < :to)
+               AND (:afterBorrowedAt IS NULL
+                    OR h.borrowed_at < :afterBorrowedAt
+                    OR (h.borrowed_at = :afterBorrowedAt AND h.id < :afterId))
+             ORDER BY h.borrowed_at DESC, h.id DESC
+             LIMIT :size)
+        ) p
+        JOIN books b ON p.book_id = b.id
+        ORDER BY p.borrowed_at DESC, p.id DESC
+        LIMIT :size
       """)
-  Flux<LoanWithBookProjection> findByUserIdWithBook(Long userId);
+  Flux<LoanWithBookProjection> findPageByUserIdWithBook(
+      @Param("userId") Long userId,
+      @Param("status") String status,
+      @Param("from") Instant from,
+      @Param("to") Instant to,
+      @Param("afterBorrowedAt") Instant afterBorrowedAt,
+      @Param("afterId") long afterId,
+      @Param("size") int size
+  );
+
+  Flux<LoanEntity> findByReturnedAtIsNull();
+
+  /**
+   * Returns the loan with the id from {@code loan_history}, for loans moved there by the {@code LoanArchiver}.
+   */
+  @Query("""
+    SELECT h.id, h.user_id, h.book_id, h.borrowed_at, h.returned_at
+    FROM loan_history h
+    WHERE h.id = :id
+    """)
+  Mono<LoanEntity> findArchivedById(@Param("id") Long id);
+
+  /**
+   * Returns the active loans of the books and locks them, also the absent ones against concurrent borrows
+   * (next-key locks on the unique key). Must run in a transaction.
+   */
+  @Query("""
+    SELECT l.*
+    FROM loans l
+    WHERE l.active_book_id IN (:bookIds)
+    FOR UPDATE
+    """)
+  Flux<LoanEntity> findActiveByBookIdInForUpdate(@Param("bookIds") Collection<Long> bookIds);
+
+  @Query("""
+    SELECT l.*
+    FROM loans l
+    WHERE l.active_book_id IN (:bookIds)
+    """)
+  Flux<LoanEntity> findActiveByBookIdIn(@Param("bookIds") Collection<Long> bookIds);
+
+  /**
+   * Returns the active loans of the user among {@code ids} and locks them. Must run in a transaction.
+   */
+  @Query("""
+    SELECT l.*
+    FROM loans l
+    WHERE l.id IN (:ids) AND l.user_id = :userId AND l.returned_at IS NULL
+    FOR UPDATE
+    """)
+  Flux<LoanEntity> findActiveByIdInAndUserIdForUpdate(@Param("ids") Collection<Long> ids, @Param("userId") Long userId);
+
+  /**
+   * Inserts one loan per book with a single statement.
+   */
+  @Modifying
+  @Query("""
+    INSERT INTO loans (user_id, book_id, borrowed_at)
+    SELECT :userId, b.id, :borrowedAt
+    FROM books b
+    WHERE b.id IN (:bookIds)
+    """)
+  Mono<Long> insertLoans(
+      @Param("userId") Long userId,
+      @Param("bookIds") Collection<Long> bookIds,
+      @Param("borrowedAt") Instant borrowedAt
+  );
+
+  /**
+   * Returns the loans that are still active, emits the number of loans returned.
+   */
+  @Modifying
+  @Query("""
+    UPDATE loans
+    SET returned_at = :returnedAt
+    WHERE id IN (:ids)
+      AND returned_at IS NULL
+    """)
+  Mono<Long> returnLoans(@Param("ids") Collection<Long> ids, @Param("returnedAt") Instant returnedAt);
+
+  /**
+   * Returns the ids of up to {@code size} loans returned before {@code before}, oldest first, and locks them. Reads and
+   * locks only these rows via {@code idx_loans_returned}. Must run in a transaction.
+   */
+  @Query("""
+    SELECT l.id
+    FROM loans l
+    WHERE l.returned_at < :before
+    ORDER BY l.returned_at, l.id
+    LIMIT :size
+    FOR UPDATE
+    """)
+  Flux<Long> findReturnedIdsForUpdate(@Param("before") Instant before, @Param("size") int size);
 
-  Mono<Boolean> existsByBookIdAndReturnedAtIsNull(Long bookId);
+  @Modifying
+  @Query("""
+    INSERT INTO loan_history (id, user_id, book_id, borrowed_at, returned_at, overdue_at)
+    SELECT l.id, l.user_id, l.book_id, l.borrowed_at, l.returned_at, l.overdue_at
+    FROM loans l
+    WHERE l.id IN (:ids)
+    """)
+  Mono<Long> copyToHistory(@Param("ids") Collection<Long> ids);
+
+  @Modifying
+  @Query("""
+    DELETE FROM loans
+    WHERE id IN (:ids)
+    """)
+  Mono<Long> deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+  /**
+   * Returns up to {@code size} active loans not yet marked overdue and borrowed before {@code dueBefore}, in
+   * (borrowedAt, id) order behind the keyset (afterBorrowedAt, afterId), null starts at the beginning.
+   * Only these candidates are read, via {@code idx_loans_overdue_candidates}.
+   */
+  @Query("""
+    SELECT l.id, l.user_id, l.book_id, l.borrowed_at
+    FROM loans l
+    WHERE l.returned_at IS NULL
+      AND l.overdue_at IS NULL
+      AND l.borrowed_at < :dueBefore
+      AND (:afterBorrowedAt IS NULL
+           OR l.borrowed_at > :afterBorrowedAt
+           OR (l.borrowed_at = :afterBorrowedAt AND l.id > :afterId))
+    ORDER BY l.borrowed_at, l.id
+    LIMIT :size
+    """)
+  Flux<LoanEntity> findOverdueCandidates(
+      @Param("dueBefore") Instant dueBefore,
+      @Param("afterBorrowedAt") Instant afterBorrowedAt,
+      @Param("afterId") long afterId,
+      @Param("size") int size
+  );
+
+  /**
+   * Returns the ids of the loans that are still active and not yet marked overdue and locks them. Must run in a
+   * transaction.
+   */
+  @Query("""
+    SELECT l.id
+    FROM loans l
+    WHERE l.id IN (:ids)
+      AND l.returned_at IS NULL
+      AND l.overdue_at IS NULL
+    FOR UPDATE
+    """)
+  Flux<Long> findNotOverdueIdsForUpdate(@Param("ids") Collection<Long> ids);
+
+  @Modifying
+  @Query("""
+    UPDATE loans
+    SET overdue_at = :overdueAt
+    WHERE id IN (:ids)
+    """)
+  Mono<Long> markOverdue(@Param("ids") Collection<Long> ids, @Param("overdueAt") Instant overdueAt);
+
+  /**
+   * Number of loans per book including the archived ones, only books borrowed at least once.
+   */
+  @Query("""
+    SELECT b.id AS book_id, b.isbn AS isbn, b.title AS title, c.borrow_count AS borrow_count
+    FROM (
+        SELECT x.book_id, COUNT(*) AS borrow_count
+        FROM (
+            SELECT l.book_id FROM loans l
+            UNION ALL
+            SELECT h.book_id FROM loan_history h
+        ) x
+        GROUP BY x.book_id
+    ) c
+    JOIN books b ON b.id = c.book_id
+    """)
+  Flux<BookBorrowCountProjection> countBorrowsPerBook();
+
+  /**
+   * Number of active loans per user, only users with active loans.
+   */
+  @Query("""
+    SELECT u.id AS user_id, u.username AS username, COUNT(*) AS loan_count
+    FROM loans l
+    JOIN users u ON u.id = l.user_id
+    WHERE l.returned_at IS NULL
+    GROUP BY u.id, u.username
+    """)
+  Flux<UserLoanCountProjection> countActiveLoansPerUser();
+
+  /**
+   * Number of loans per UTC day (days since the epoch) borrowed since {@code from}, including the archived ones.
+   */
+  @Query("""
+    SELECT d.day AS day, COUNT(*) AS borrow_count
+    FROM (
+        SELECT CAST(FLOOR(UNIX_TIMESTAMP(l.borrowed_at) / 86400) AS SIGNED) AS day
+        FROM loans l
+        WHERE l.borrowed_at >= :from
+        UNION ALL
+        SELECT CAST(FLOOR(UNIX_TIMESTAMP(h.borrowed_at) / 86400) AS SIGNED) AS day
+        FROM loan_history h
+        WHERE h.borrowed_at >= :from
+    ) d
+    GROUP BY d.day
+    """)
+  Flux<DailyBorrowCountProjection> countBorrowsPerDay(@Param("from") Instant from);
 }
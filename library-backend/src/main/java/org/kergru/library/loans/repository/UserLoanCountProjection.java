@@ -0,0 +1,33 @@
+package org.kergru.library.loans.repository;
+
+public class UserLoanCountProjection {
+
+  private Long userId;
+  private String username;
+  private Long loanCount;
+
+  // --- Getter / Setter ---
+  public Long getUserId() {
+    return userId;
+  }
+
+  public void setUserId(Long userId) {
+    this.userId = userId;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public Long getLoanCount() {
+    return loanCount;
+  }
+
+  public void setLoanCount(Long loanCount) {
+    this.loanCount = loanCount;
+  }
+}
@@ -0,0 +1,51 @@
+package org.kergru.library.loans.rest;
+
+import org.kergru.library.loans.service.LoanChangeFeed;
+import org.kergru.library.model.LoanChangesDto;
+import org.kergru.library.model.LoanEventDto;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/library/api")
+public class LoanController {
+
+  private final LoanChangeFeed loanChangeFeed;
+
+  public LoanController(LoanChangeFeed loanChangeFeed) {
+    this.loanChangeFeed = loanChangeFeed;
+  }
+
+  /**
+   * Returns the borrows and returns after the offset {@code after}, for consumers like reporting that process the
+   * changes incrementally. Start with 0 and continue with the returned nextOffset. Only accessible by the librarian.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @GetMapping("/loans/changes")
+  public Mono<LoanChangesDto> getChanges(
+      @RequestParam(defaultValue = "0") long after,
+      @RequestParam(defaultValue = "500") int limit
+  ) {
+    return loanChangeFeed.changes(after, limit)
+        .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+  }
+
+  /**
+   * Follows the change feed as newline delimited JSON: the events after {@code after}, then new events as they occur.
+   * After a disconnect the consumer resumes with the offset of the last event received.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @GetMapping(value = "/loans/changes/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<LoanEventDto> followChanges(@RequestParam(defaultValue = "0") long after) {
+    return loanChangeFeed.follow(after)
+        .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+  }
+}
@@ -0,0 +1,340 @@
+package org.kergru.library.loans.service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.kergru.library.loans.repository.LoanEntity;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanEventProjection;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+import reactor.util.retry.Retry;
+
+/**
+ * In-memory index of all active loans by book id, so book queries do not need to join {@code loans}.
+ *
+ * <p>Open addressing hash table with linear probing over primitive arrays (book id, loan id, borrower id, borrowedAt),
+ * no boxing per entry. Book ids are positive, 0 marks an empty slot.
+ *
+ * <p>Loaded in the background once the application is ready from a snapshot together with its offset in the
+ * {@link LoanChangeFeed}, retried until it succeeds, then maintained from the borrow and return events after that
+ * offset, so loans changed on other nodes are seen within the feed's poll interval. {@link LoanService} also applies
+ * its own borrows and returns right away. Until the first load has finished the index is empty, callers wait for
+ * {@link #whenLoaded()} before reading it, at most {@code wait-timeout}. Changes during a {@link #reload()} are recorded
+ * and applied again on top of the loaded loans, as the query may have read the database before or after them; puts
+ * and removes are idempotent. Loans changed directly in the database are only seen after {@link #reload()}.
+ */
+@Component
+public class ActiveLoanIndex {
+
+  private static final long EMPTY = 0L;
+
+  private static final int MIN_CAPACITY = 64;
+
+  private static final Duration LOAD_RETRY_MIN_BACKOFF = Duration.ofSeconds(1);
+
+  private static final Duration LOAD_RETRY_MAX_BACKOFF = Duration.ofSeconds(30);
+
+  private final LoanRepository loanRepository;
+
+  private final LoanChangeFeed loanChangeFeed;
+
+  private final Duration waitTimeout;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private long[] bookIds;
+  private long[] loanIds;
+  private long[] borrowerIds;
+  private long[] borrowedAtSeconds;
+  private int[] borrowedAtNanos;
+
+  private int size;
+
+  // changes made while a reload is running, one list per running reload
+  private final List<List<Runnable>> recordings = new ArrayList<>();
+
+  private final Sinks.Empty<Void> loaded = Sinks.empty();
+
+  private Disposable subscription;
+
+  public ActiveLoanIndex(
+      LoanRepository loanRepository,
+      LoanChangeFeed loanChangeFeed,
+      @Value("${library.loans.active-index.wait-timeout:PT10S}") Duration waitTimeout
+  ) {
+    this.loanRepository = loanRepository;
+    this.loanChangeFeed = loanChangeFeed;
+    this.waitTimeout = waitTimeout;
+    allocate(MIN_CAPACITY);
+  }
+
+  /**
+   * Active loan of a book.
+   */
+  public record ActiveLoan(long loanId, long borrowerId, Instant borrowedAt) {
+
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    subscription = loadSnapshot()
+        .retryWhen(Retry.backoff(Long.MAX_VALUE, LOAD_RETRY_MIN_BACKOFF)
+            .maxBackoff(LOAD_RETRY_MAX_BACKOFF)
+            .doBeforeRetry(signal -> System.err.println(
+                "Error loading active loan index, retrying: " + signal.failure().getMessage())))
+        .flatMapMany(loanChangeFeed::followEvents)
+        .subscribe(this::apply);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (subscription != null) {
+      subscription.dispose();
+    }
+  }
+
+  /**
+   * Completes once the index has been loaded for the first time, fails with {@link IllegalStateException} if that
+   * takes longer than {@code wait-timeout}.
+   */
+  public Mono<Void> whenLoaded() {
+    return loaded.asMono()
+        .timeout(waitTimeout, Mono.error(() -> new IllegalStateException("Active loans are not loaded yet")));
+  }
+
+  /**
+   * Replaces the content with the active loans from the database.
+   */
+  public Mono<Void> reload() {
+    return loadSnapshot().then();
+  }
+
+  /**
+   * Replaces the content with a snapshot of the active loans, emits the feed offset of the snapshot.
+   */
+  private Mono<Long> loadSnapshot() {
+    return Mono.defer(() -> {
+      List<Runnable> changes = startRecording();
+      return loanChangeFeed.snapshot(loanRepository.findByReturnedAtIsNull().collectList())
+          .doOnNext(snapshot -> replace(snapshot.getT2(), changes))
+          .map(Tuple2::getT1)
+          .doFinally(signal -> stopRecording(changes));
+    });
+  }
+
+  /**
+   * Applies a borrow or return event of the change feed, other events are ignored.
+   */
+  void apply(LoanEventProjection event) {
+    switch (event.getType()) {
+      case LoanEventEntity.BORROWED ->
+          put(event.getBookId(), event.getLoanId(), event.getUserId(), event.getOccurredAt());
+      case LoanEventEntity.RETURNED -> remove(event.getBookId(), event.getLoanId());
+      default -> {
+      }
+    }
+  }
+
+  private void replace(List<LoanEntity> loans, List<Runnable> changes) {
+    int loadedSize;
+    lock.writeLock().lock();
+    try {
+      recordings.remove(changes);
+      size = 0;
+      allocate(capacityFor(loans.size()));
+      loans.forEach(l -> putInternal(l.bookId, l.id, l.userId, l.borrowedAt));
+      changes.forEach(Runnable::run);
+      loadedSize = size;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    loaded.tryEmitEmpty();
+    System.out.println("Active loan index loaded: " + loadedSize + " loans");
+  }
+
+  private List<Runnable> startRecording() {
+    List<Runnable> changes = new ArrayList<>();
+    lock.writeLock().lock();
+    try {
+      recordings.add(changes);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return changes;
+  }
+
+  private void stopRecording(List<Runnable> changes) {
+    lock.writeLock().lock();
+    try {
+      recordings.remove(changes);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the active loan of the book, null if the book is available.
+   */
+  public ActiveLoan get(long bookId) {
+    lock.readLock().lock();
+    try {
+      int slot = find(bookId);
+      if (slot < 0) {
+        return null;
+      }
+      return new ActiveLoan(
+          loanIds[slot],
+          borrowerIds[slot],
+          Instant.ofEpochSecond(borrowedAtSeconds[slot], borrowedAtNanos[slot]));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public void put(LoanEntity loan) {
+    put(loan.bookId, loan.id, loan.userId, loan.borrowedAt);
+  }
+
+  private void put(long bookId, long loanId, long borrowerId, Instant borrowedAt) {
+    lock.writeLock().lock();
+    try {
+      Runnable change = () -> {
+        if (size + 1 > bookIds.length / 2) {
+          resize(bookIds.length * 2);
+        }
+        putInternal(bookId, loanId, borrowerId, borrowedAt);
+      };
+      change.run();
+      recordings.forEach(changes -> changes.add(change));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the active loan of the book if it is still the given loan.
+   */
+  public void remove(long bookId, long loanId) {
+    lock.writeLock().lock();
+    try {
+      Runnable change = () -> {
+        int slot = find(bookId);
+        if (slot >= 0 && loanIds[slot] == loanId) {
+          removeSlot(slot);
+        }
+      };
+      change.run();
+      recordings.forEach(changes -> changes.add(change));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int find(long bookId) {
+    int mask = bookIds.length - 1;
+    for (int slot = hash(bookId) & mask; bookIds[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (bookIds[slot] == bookId) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private void putInternal(long bookId, long loanId, long borrowerId, Instant borrowedAt) {
+    int mask = bookIds.length - 1;
+    int slot = hash(bookId) & mask;
+    while (bookIds[slot] != EMPTY && bookIds[slot] != bookId) {
+      slot = (slot + 1) & mask;
+    }
+    if (bookIds[slot] == EMPTY) {
+      size++;
+    }
+    bookIds[slot] = bookId;
+    loanIds[slot] = loanId;
+    borrowerIds[slot] = borrowerId;
+    borrowedAtSeconds[slot] = borrowedAt.getEpochSecond();
+    borrowedAtNanos[slot] = borrowedAt.getNano();
+  }
+
+  /**
+   * Backward shift deletion: moves following entries of the probe sequence into the gap, so lookups need no tombstones.
+   */
+  private void removeSlot(int slot) {
+    int mask = bookIds.length - 1;
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (bookIds[next] != EMPTY) {
+      int home = hash(bookIds[next]) & mask;
+      // entry may move into the gap if its home slot is not between gap (exclusive) and next (inclusive)
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        copySlot(next, gap);
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    bookIds[gap] = EMPTY;
+    size--;
+  }
+
+  private void copySlot(int from, int to) {
+    bookIds[to] = bookIds[from];
+    loanIds[to] = loanIds[from];
+    borrowerIds[to] = borrowerIds[from];
+    borrowedAtSeconds[to] = borrowedAtSeconds[from];
+    borrowedAtNanos[to] = borrowedAtNanos[from];
+  }
+
+  private void resize(int capacity) {
+    long[] oldBookIds = bookIds;
+    long[] oldLoanIds = loanIds;
+    long[] oldBorrowerIds = borrowerIds;
+    long[] oldSeconds = borrowedAtSeconds;
+    int[] oldNanos = borrowedAtNanos;
+
+    allocate(capacity);
+    size = 0;
+    for (int i = 0; i < oldBookIds.length; i++) {
+      if (oldBookIds[i] != EMPTY) {
+        putInternal(oldBookIds[i], oldLoanIds[i], oldBorrowerIds[i], Instant.ofEpochSecond(oldSeconds[i], oldNanos[i]));
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    bookIds = new long[capacity];
+    loanIds = new long[capacity];
+    borrowerIds = new long[capacity];
+    borrowedAtSeconds = new long[capacity];
+    borrowedAtNanos = new int[capacity];
+  }
+
+  // power of two with a load factor of at most 0.5
+  private static int capacityFor(int entries) {
+    return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, entries) * 4 - 1));
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -0,0 +1,72 @@
+package org.kergru.library.loans.service;
+
+import java.time.Instant;
+import java.util.Collection;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.model.BookAvailabilityDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Publishes borrow and return events to all subscribers of the availability stream.
+ *
+ * <p>The sink never blocks the loan requests: every subscriber gets its own buffer of {@code buffer-size} events,
+ * if a slow client falls behind the oldest events are dropped. Clients that missed events reload the list.
+ */
+@Component
+public class AvailabilityEvents {
+
+  private final Sinks.Many<BookAvailabilityDto> sink = Sinks.many().multicast().directBestEffort();
+
+  private final BookRepository bookRepository;
+
+  private final int bufferSize;
+
+  public AvailabilityEvents(
+      BookRepository bookRepository,
+      @Value("${library.books.availability.buffer-size:256}") int bufferSize
+  ) {
+    this.bookRepository = bookRepository;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Events published from now on, buffered per subscriber.
+   */
+  public Flux<BookAvailabilityDto> stream() {
+    return sink.asFlux()
+        .onBackpressureBuffer(bufferSize, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST);
+  }
+
+  public void borrowed(Collection<BookEntity> books) {
+    books.forEach(book -> emit(book.isbn, false));
+  }
+
+  /**
+   * Resolves the ISBNs of the returned books and publishes them. Errors are logged only, the return is already done.
+   */
+  public Mono<Void> returned(Collection<Long> bookIds) {
+    if (bookIds.isEmpty()) {
+      return Mono.empty();
+    }
+    return bookRepository.findAllByIdIn(bookIds)
+        .doOnNext(book -> emit(book.isbn, true))
+        .then()
+        .onErrorResume(e -> {
+          System.err.println("Error publishing returned books: " + e.getMessage());
+          return Mono.empty();
+        });
+  }
+
+  /**
+   * Loans are processed concurrently, the sink requires serialized emissions.
+   */
+  private synchronized void emit(String isbn, boolean available) {
+    sink.tryEmitNext(new BookAvailabilityDto(isbn, available, Instant.now()));
+  }
+}
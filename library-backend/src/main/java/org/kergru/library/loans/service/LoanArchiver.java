@@ -0,0 +1,81 @@
+package org.kergru.library.loans.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Moves returned loans from {@code loans} to {@code loan_history}, so {@code loans} only holds the active and the
+ * recently returned loans and stays small however long the history grows.
+ *
+ * <p>Runs periodically in chunks, each chunk is copied and deleted in its own short transaction. Loans returned less
+ * than {@code min-age} ago are kept.
+ */
+@Component
+public class LoanArchiver {
+
+  private final LoanRepository loanRepository;
+
+  private final TransactionalOperator transactionalOperator;
+
+  private final Duration minAge;
+
+  private final int chunkSize;
+
+  public LoanArchiver(
+      LoanRepository loanRepository,
+      TransactionalOperator transactionalOperator,
+      @Value("${library.loans.archive.min-age:P1D}") Duration minAge,
+      @Value("${library.loans.archive.chunk-size:1000}") int chunkSize
+  ) {
+    this.loanRepository = loanRepository;
+    this.transactionalOperator = transactionalOperator;
+    this.minAge = minAge;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Blocks the scheduler thread until all chunks are archived, so runs never overlap.
+   */
+  @Scheduled(
+      fixedDelayString = "${library.loans.archive.interval:PT1H}",
+      initialDelayString = "${library.loans.archive.interval:PT1H}")
+  public void archiveScheduled() {
+    try {
+      Long archived = archive(Instant.now().minus(minAge)).block();
+      System.out.println("Loans archived: " + archived);
+    } catch (RuntimeException e) {
+      System.err.println("Error archiving loans: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Archives all loans returned before {@code before}, emits the number of archived loans.
+   */
+  public Mono<Long> archive(Instant before) {
+    return archiveChunk(before)
+        .expand(archived -> archived < chunkSize ? Mono.empty() : archiveChunk(before))
+        .reduce(0L, Long::sum);
+  }
+
+  private Mono<Long> archiveChunk(Instant before) {
+    return transactionalOperator.transactional(
+        loanRepository.findReturnedIdsForUpdate(before, chunkSize).collectList()
+            .flatMap(this::moveToHistory));
+  }
+
+  private Mono<Long> moveToHistory(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return Mono.just(0L);
+    }
+    return loanRepository.copyToHistory(ids)
+        .then(loanRepository.deleteByIdIn(ids))
+        .thenReturn((long) ids.size());
+  }
+}
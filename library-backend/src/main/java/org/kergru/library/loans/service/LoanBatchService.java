@@ -0,0 +1,194 @@
+package org.kergru.library.loans.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.books.repository.BookRepository;
+import org.kergru.library.loans.repository.LoanEntity;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.kergru.library.model.LoanBatchItemDto;
+import org.kergru.library.users.service.UserIdResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Borrows and returns many books of one user at once, e.g. a pile from the drop box.
+ *
+ * <p>The user is resolved once, the loans are read, locked and written with set based statements in one transaction,
+ * independent of the number of items. The outcome is reported per requested item, in request order.
+ *
+ * <p>Locking absent keys takes gap locks, so concurrent batches over overlapping books can deadlock. InnoDB then rolls
+ * back one of them, which is retried up to {@code deadlock-retries} times and otherwise fails with
+ * {@link IllegalStateException}.
+ */
+@Service
+public class LoanBatchService {
+
+  private static final Duration DEADLOCK_RETRY_BACKOFF = Duration.ofMillis(20);
+
+  private final LoanRepository loanRepository;
+
+  private final LoanEventOutbox loanEventOutbox;
+
+  private final UserIdResolver userIdResolver;
+
+  private final BookRepository bookRepository;
+
+  private final ActiveLoanIndex activeLoans;
+
+  private final AvailabilityEvents availabilityEvents;
+
+  private final TransactionalOperator transactionalOperator;
+
+  private final int maxSize;
+
+  private final int deadlockRetries;
+
+  public LoanBatchService(
+      LoanRepository loanRepository,
+      LoanEventOutbox loanEventOutbox,
+      UserIdResolver userIdResolver,
+      BookRepository bookRepository,
+      ActiveLoanIndex activeLoans,
+      AvailabilityEvents availabilityEvents,
+      TransactionalOperator transactionalOperator,
+      @Value("${library.loans.batch.max-size:500}") int maxSize,
+      @Value("${library.loans.batch.deadlock-retries:3}") int deadlockRetries
+  ) {
+    this.loanRepository = loanRepository;
+    this.loanEventOutbox = loanEventOutbox;
+    this.userIdResolver = userIdResolver;
+    this.bookRepository = bookRepository;
+    this.activeLoans = activeLoans;
+    this.availabilityEvents = availabilityEvents;
+    this.transactionalOperator = transactionalOperator;
+    this.maxSize = maxSize;
+    this.deadlockRetries = deadlockRetries;
+  }
+
+  /**
+   * Borrows the available books to the user. Books that are unknown or already borrowed are reported as failed.
+   */
+  public Flux<LoanBatchItemDto> borrowBooks(String userName, List<String> isbns) {
+    List<String> distinct = isbns.stream().distinct().toList();
+    if (distinct.isEmpty() || distinct.size() > maxSize) {
+      return Flux.error(new IllegalArgumentException("Batch must contain 1 to " + maxSize + " items"));
+    }
+    Instant now = Instant.now();
+
+    return findUserId(userName)
+        .zipWith(bookRepository.findAllByIsbnIn(distinct).collectMap(b -> b.isbn))
+        .flatMapMany(tuple -> {
+          long userId = tuple.getT1();
+          Map<String, BookEntity> books = tuple.getT2();
+          List<Long> bookIds = books.values().stream().map(b -> b.id).toList();
+
+          return retryOnDeadlock(transactionalOperator.transactional(insertAvailable(userId, bookIds, now)))
+              .onErrorMap(LoanService::isDuplicateKey, e -> new IllegalStateException("Book is already borrowed"))
+              .flatMapIterable(created -> {
+                created.values().forEach(activeLoans::put);
+                List<BookEntity> borrowed = books.values().stream().filter(b -> created.containsKey(b.id)).toList();
+                availabilityEvents.borrowed(borrowed);
+
+                return isbns.stream()
+                    .map(isbn -> {
+                      BookEntity book = books.get(isbn);
+                      if (book == null) {
+                        return new LoanBatchItemDto(isbn, null, "Book not found");
+                      }
+                      LoanEntity loan = created.get(book.id);
+                      return loan != null
+                          ? new LoanBatchItemDto(isbn, loan.id, null)
+                          : new LoanBatchItemDto(isbn, null, "Book is already borrowed");
+                    })
+                    .toList();
+              });
+        });
+  }
+
+  /**
+   * Returns the loans of the user. Loans that are unknown, already returned or not the user's are reported as failed.
+   */
+  public Flux<LoanBatchItemDto> returnBooks(String userName, List<Long> loanIds) {
+    List<Long> distinct = loanIds.stream().distinct().toList();
+    if (distinct.isEmpty() || distinct.size() > maxSize) {
+      return Flux.error(new IllegalArgumentException("Batch must contain 1 to " + maxSize + " items"));
+    }
+    Instant now = Instant.now();
+
+    return findUserId(userName)
+        .flatMap(userId -> retryOnDeadlock(transactionalOperator.transactional(
+            loanRepository.findActiveByIdInAndUserIdForUpdate(distinct, userId).collectList()
+                .flatMap(loans -> loans.isEmpty()
+                    ? Mono.just(loans)
+                    : returnLoans(loans.stream().map(l -> l.id).toList(), now).thenReturn(loans))))
+            .doOnNext(returned -> returned.forEach(l -> activeLoans.remove(l.bookId, l.id))))
+        .flatMap(returned -> availabilityEvents.returned(returned.stream().map(l -> l.bookId).toList())
+            .thenReturn(returned))
+        .flatMapIterable(returned -> {
+          Set<Long> returnedIds = returned.stream().map(l -> l.id).collect(Collectors.toSet());
+
+          return loanIds.stream()
+              .map(id -> returnedIds.contains(id)
+                  ? new LoanBatchItemDto(String.valueOf(id), id, null)
+                  : new LoanBatchItemDto(String.valueOf(id), null, "Loan not found"))
+              .toList();
+        });
+  }
+
+  /**
+   * Locks the active loans of the books, inserts loans for the others and returns them by book id.
+   */
+  private Mono<Map<Long, LoanEntity>> insertAvailable(Long userId, List<Long> bookIds, Instant now) {
+    if (bookIds.isEmpty()) {
+      return Mono.just(Map.of());
+    }
+    return loanRepository.findActiveByBookIdInForUpdate(bookIds)
+        .map(l -> l.bookId)
+        .collect(Collectors.toSet())
+        .flatMap(borrowed -> {
+          List<Long> available = bookIds.stream().filter(id -> !borrowed.contains(id)).toList();
+          if (available.isEmpty()) {
+            return Mono.just(Map.<Long, LoanEntity>of());
+          }
+          return loanRepository.insertLoans(userId, available, now)
+              .thenMany(loanRepository.findActiveByBookIdIn(available))
+              .collectMap(l -> l.bookId)
+              .flatMap(created -> loanEventOutbox
+                  .append(created.values().stream().map(l -> l.id).toList(), LoanEventEntity.BORROWED, now)
+                  .thenReturn(created));
+        });
+  }
+
+  private Mono<Long> returnLoans(List<Long> ids, Instant now) {
+    return loanRepository.returnLoans(ids, now)
+        .flatMap(returned -> loanEventOutbox.append(ids, LoanEventEntity.RETURNED, now).thenReturn(returned));
+  }
+
+  /**
+   * Runs the transaction again if InnoDB rolled it back as deadlock victim, with a short randomized backoff.
+   */
+  private <T> Mono<T> retryOnDeadlock(Mono<T> transaction) {
+    return transaction
+        .retryWhen(Retry.backoff(deadlockRetries, DEADLOCK_RETRY_BACKOFF)
+            .filter(LoanService::isDeadlock)
+            .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+        .onErrorMap(LoanService::isDeadlock,
+            e -> new IllegalStateException("Books are changed concurrently, please retry"));
+  }
+
+  private Mono<Long> findUserId(String userName) {
+    return userIdResolver.resolve(userName)
+        .switchIfEmpty(Mono.error(new NoSuchElementException("User not found")));
+  }
+}
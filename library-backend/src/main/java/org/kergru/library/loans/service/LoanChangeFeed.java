@@ -0,0 +1,119 @@
+package org.kergru.library.loans.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kergru.library.loans.repository.LoanEventProjection;
+import org.kergru.library.loans.repository.LoanEventRepository;
+import org.kergru.library.model.LoanChangesDto;
+import org.kergru.library.model.LoanEventDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.retry.Retry;
+
+/**
+ * Resumable change feed over the {@code loan_events} outbox. Consumers keep the offset of the last event they
+ * processed and continue after it, either batch by batch or by following the feed.
+ *
+ * <p>Offsets become visible in commit order, see {@link LoanEventOutbox}, so reading after the last offset never skips
+ * an event that commits later.
+ *
+ * <p>In-memory views of the loans load a {@link #snapshot(Mono)} and then apply the {@link #followEvents(long) events}
+ * after its offset, so they see the changes of all nodes exactly once.
+ */
+@Service
+public class LoanChangeFeed {
+
+  private final LoanEventRepository loanEventRepository;
+
+  private final Duration pollInterval;
+
+  private final int maxBatchSize;
+
+  private final TransactionalOperator transactionalOperator;
+
+  public LoanChangeFeed(
+      LoanEventRepository loanEventRepository,
+      TransactionalOperator transactionalOperator,
+      @Value("${library.loans.changes.poll-interval:PT1S}") Duration pollInterval,
+      @Value("${library.loans.changes.max-batch-size:1000}") int maxBatchSize
+  ) {
+    this.loanEventRepository = loanEventRepository;
+    this.transactionalOperator = transactionalOperator;
+    this.pollInterval = pollInterval;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Returns up to {@code limit} events after the offset {@code after}.
+   */
+  public Mono<LoanChangesDto> changes(long after, int limit) {
+    if (after < 0 || limit < 1 || limit > maxBatchSize) {
+      return Mono.error(new IllegalArgumentException(
+          "after must not be negative and limit must be between 1 and " + maxBatchSize));
+    }
+    return readBatch(after, limit)
+        .map(events -> new LoanChangesDto(events, events.isEmpty() ? after : events.getLast().offset()));
+  }
+
+  /**
+   * Emits all events after the offset {@code after} and then the new ones as they are committed, until cancelled.
+   * The outbox is polled every {@code poll-interval}, a backlog is read in consecutive batches without waiting.
+   */
+  public Flux<LoanEventDto> follow(long after) {
+    if (after < 0) {
+      return Flux.error(new IllegalArgumentException("after must not be negative"));
+    }
+    return poll(after).map(LoanChangeFeed::toDto);
+  }
+
+  /**
+   * Like {@link #follow(long)}, with the user and book ids of the events. A failed poll is retried after
+   * {@code poll-interval}, continuing after the last emitted event, so the flux only ends when cancelled.
+   */
+  public Flux<LoanEventProjection> followEvents(long after) {
+    AtomicLong offset = new AtomicLong(after);
+    return Flux.defer(() -> poll(offset.get()))
+        .doOnNext(event -> offset.set(event.getId()))
+        .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, pollInterval)
+            .doBeforeRetry(signal -> System.err.println(
+                "Error following loan events, retrying: " + signal.failure().getMessage())));
+  }
+
+  /**
+   * Runs {@code query} in one transaction with reading the last offset. With REPEATABLE READ all reads of the
+   * transaction see the snapshot of its first read, so the result contains exactly the changes up to the offset.
+   */
+  public <T> Mono<Tuple2<Long, T>> snapshot(Mono<T> query) {
+    return transactionalOperator.transactional(loanEventRepository.findLastOffset().zipWhen(offset -> query));
+  }
+
+  private Flux<LoanEventProjection> poll(long after) {
+    AtomicLong offset = new AtomicLong(after);
+    return Flux.interval(Duration.ZERO, pollInterval)
+        .onBackpressureDrop()
+        .concatMap(tick -> readEvents(offset.get(), maxBatchSize)
+            .expand(events -> events.size() < maxBatchSize
+                ? Mono.empty()
+                : readEvents(events.getLast().getId(), maxBatchSize))
+            .concatMapIterable(events -> events), 1)
+        .doOnNext(event -> offset.set(event.getId()));
+  }
+
+  private Mono<List<LoanEventDto>> readBatch(long after, int limit) {
+    return readEvents(after, limit)
+        .map(events -> events.stream().map(LoanChangeFeed::toDto).toList());
+  }
+
+  private Mono<List<LoanEventProjection>> readEvents(long after, int limit) {
+    return loanEventRepository.findAfter(after, limit).collectList();
+  }
+
+  private static LoanEventDto toDto(LoanEventProjection e) {
+    return new LoanEventDto(e.getId(), e.getType(), e.getLoanId(), e.getUsername(), e.getIsbn(), e.getOccurredAt());
+  }
+}
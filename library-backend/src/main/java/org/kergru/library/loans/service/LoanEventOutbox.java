@@ -0,0 +1,43 @@
+package org.kergru.library.loans.service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.kergru.library.loans.repository.LoanEventRepository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes the {@code loan_events} outbox entries of loan changes, within the transaction of the change.
+ *
+ * <p>The offsets are not auto increment ids, which are assigned at insert and may become visible out of order. They
+ * are taken from the single row {@code loan_event_sequence}, whose lock is held until commit: a transaction waits
+ * until the previous writer has committed, so offsets become visible in commit order and a reader that sees an offset
+ * has seen all smaller ones. A rollback releases the reserved offsets again.
+ *
+ * <p>All loan writes serialize on the sequence row, appending must therefore be the last statement of the
+ * transaction. As no writer takes further locks after it, the sequence row cannot be part of a deadlock.
+ */
+@Component
+public class LoanEventOutbox {
+
+  private final LoanEventRepository loanEventRepository;
+
+  public LoanEventOutbox(LoanEventRepository loanEventRepository) {
+    this.loanEventRepository = loanEventRepository;
+  }
+
+  /**
+   * Writes one event of {@code type} per loan, must run in the transaction that changed the loans.
+   */
+  public Mono<Void> append(Collection<Long> loanIds, String type, Instant occurredAt) {
+    List<Long> ids = loanIds.stream().distinct().toList();
+    if (ids.isEmpty()) {
+      return Mono.empty();
+    }
+    return loanEventRepository.reserveOffsets(ids.size())
+        .then(loanEventRepository.findLastOffset())
+        .flatMap(last -> loanEventRepository.insertForLoans(ids, type, occurredAt, last - ids.size() + 1))
+        .then();
+  }
+}
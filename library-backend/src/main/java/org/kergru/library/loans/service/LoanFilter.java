@@ -0,0 +1,33 @@
+package org.kergru.library.loans.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Filter of a user's loans, null fields do not filter.
+ * {@code status} is active or returned, the borrowedAt range is [borrowedFrom, borrowedTo).
+ */
+public record LoanFilter(String status, Instant borrowedFrom, Instant borrowedTo) {
+
+  public static final LoanFilter NONE = new LoanFilter(null, null, null);
+
+  private static final Set<String> STATUSES = Set.of("active", "returned");
+
+  /**
+   * Builds the filter from the request parameters, both dates are inclusive (UTC days).
+   * Throws an {@link IllegalArgumentException} for an unknown status.
+   */
+  public static LoanFilter of(String status, LocalDate from, LocalDate to) {
+    String s = status != null ? status.toLowerCase(Locale.ROOT) : null;
+    if (s != null && !STATUSES.contains(s)) {
+      throw new IllegalArgumentException("Invalid loan status: " + status);
+    }
+    return new LoanFilter(
+        s,
+        from != null ? from.atStartOfDay(ZoneOffset.UTC).toInstant() : null,
+        to != null ? to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant() : null);
+  }
+}
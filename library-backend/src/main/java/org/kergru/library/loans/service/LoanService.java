@@ -1,112 +1,267 @@
 package org.kergru.library.loans.service;
 
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import io.r2dbc.spi.R2dbcException;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import org.kergru.library.books.repository.BookEntity;
 import org.kergru.library.books.repository.BookRepository;
-import org.kergru.library.books.repository.BookWithLoanProjection;
+import org.kergru.library.books.service.BookFields;
+import org.kergru.library.books.service.BookLookupCache;
 import org.kergru.library.loans.repository.LoanEntity;
+import org.kergru.library.loans.repository.LoanEventEntity;
 import org.kergru.library.loans.repository.LoanRepository;
 import org.kergru.library.loans.repository.LoanWithBookProjection;
 import org.kergru.library.model.BookDto;
 import org.kergru.library.model.LoanDto;
-import org.kergru.library.users.repository.UserEntity;
-import org.kergru.library.users.repository.UserRepository;
+import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.paging.PageCursor;
+import org.kergru.library.users.service.UserIdResolver;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Mono;
 
 @Service
 public class LoanService {
 
+  private static final String CURSOR_SORT = "borrowedAt";
+
+  private static final int MYSQL_DEADLOCK = 1213;
+
   private final LoanRepository loanRepository;
 
-  private final UserRepository userRepository;
+  private final LoanEventOutbox loanEventOutbox;
+
+  private final UserIdResolver userIdResolver;
 
   private final BookRepository bookRepository;
 
+  private final BookLookupCache bookLookupCache;
+
+  private final ActiveLoanIndex activeLoans;
+
+  private final AvailabilityEvents availabilityEvents;
+
+  private final BorrowLocks borrowLocks;
+
+  private final TransactionalOperator transactionalOperator;
+
   public LoanService(
       LoanRepository loanRepository,
-      UserRepository userRepository,
-      BookRepository bookRepository
+      LoanEventOutbox loanEventOutbox,
+      UserIdResolver userIdResolver,
+      BookRepository bookRepository,
+      BookLookupCache bookLookupCache,
+      ActiveLoanIndex activeLoans,
+      AvailabilityEvents availabilityEvents,
+      BorrowLocks borrowLocks,
+      TransactionalOperator transactionalOperator
   ) {
     this.loanRepository = loanRepository;
-    this.userRepository = userRepository;
+    this.loanEventOutbox = loanEventOutbox;
+    this.userIdResolver = userIdResolver;
     this.bookRepository = bookRepository;
+    this.bookLookupCache = bookLookupCache;
+    this.activeLoans = activeLoans;
+    this.availabilityEvents = availabilityEvents;
+    this.borrowLocks = borrowLocks;
+    this.transactionalOperator = transactionalOperator;
   }
 
-  public Flux<LoanDto> getBorrowedBooksByUser(String userName) {
-    return userRepository.findByUsername(userName)
-        .switchIfEmpty(Mono.error(new NoSuchElementException("User not found")))
-        .flatMapMany(user -> loanRepository.findByUserIdWithBook(user.id))
-        .map(this::toDto)
+  /**
+   * Returns a page of the user's loans (active, returned and archived), newest first, with the requested book fields.
+   * Pages are cursor based only, {@code after} is the nextCursor of the previous page. The total is not counted.
+   * Fetches one row more than requested to determine {@code last}, the book descriptions are only loaded if requested.
+   */
+  public Mono<PageResponseDto<LoanDto>> getBorrowedBooksByUser(
+      String userName, LoanFilter filter, String after, int size, BookFields fields) {
+
+    PageCursor cursor;
+    try {
+      cursor = after != null ? decodeCursor(after) : null;
+    } catch (IllegalArgumentException e) {
+      return Mono.error(e);
+    }
+
+    return findUserId(userName)
+        .flatMap(userId -> loanRepository.findPageByUserIdWithBook(
+                userId, filter.status(), filter.borrowedFrom(), filter.borrowedTo(),
+                cursor != null ? Instant.parse(cursor.key()) : null, cursor != null ? cursor.id() : 0L, size + 1)
+            .collectList())
+        .flatMap(fetched -> fields.includesDescription() ? withDescriptions(fetched) : Mono.just(fetched))
+        .map(fetched -> {
+          boolean hasNext = fetched.size() > size;
+          var rows = hasNext ? fetched.subList(0, size) : fetched;
+          return new PageResponseDto<>(
+              rows.stream().map(loan -> toDto(loan, fields)).toList(),
+              0,
+              size,
+              PageResponseDto.UNKNOWN_TOTAL,
+              PageResponseDto.UNKNOWN_TOTAL,
+              cursor == null,
+              !hasNext,
+              rows.size(),
+              rows.isEmpty(),
+              hasNext ? cursorOf(rows.getLast()) : null,
+              null
+          );
+        })
         .doOnError(err -> System.err.println("Error in findBorrowedByUser: " + err.getMessage()));
   }
 
+  /**
+   * Borrows the book with a single INSERT. There is no check for an active loan before, the unique key on
+   * {@code loans.active_book_id} rejects a second active loan of the book, also for concurrent requests on other nodes.
+   * The book is resolved first, usually from the lookup cache. While a borrow of the book is in flight on this node,
+   * further borrows of it fail immediately without a database round trip, see {@link BorrowLocks}.
+   */
   public Mono<LoanDto> borrowBook(String isbn, String userName) {
-    return userRepository.findByUsername(userName)
-        .switchIfEmpty(Mono.error(new NoSuchElementException("User not found")))
-        .zipWhen(u -> bookRepository.findByIsbn(isbn)
-            .switchIfEmpty(Mono.error(new NoSuchElementException("Book not found"))))
-        .flatMap(tuple -> {
-          var user = tuple.getT1();
-          var book = tuple.getT2();
-
-          return loanRepository.existsByBookIdAndReturnedAtIsNull(book.getId())
-              .flatMap(exists -> {
-                if (exists) return Mono.error(new IllegalStateException("Book is already borrowed"));
-                var loan = new LoanEntity();
-                loan.userId = user.id;
-                loan.bookId = book.getId();
-                loan.borrowedAt = Instant.now();
-                return loanRepository.save(loan)
-                    .map(saved -> toDto(saved, book));
-              });
-        });
+    return bookLookupCache.get(isbn)
+        .switchIfEmpty(Mono.error(new NoSuchElementException("Book not found")))
+        .flatMap(book -> borrowLocks.withLock(book.id, findUserId(userName)
+            .flatMap(userId -> {
+              var loan = new LoanEntity();
+              loan.userId = userId;
+              loan.bookId = book.id;
+              loan.borrowedAt = Instant.now();
+              return transactionalOperator.transactional(saveWithEvent(loan, LoanEventEntity.BORROWED, loan.borrowedAt))
+                  .onErrorMap(LoanService::isDuplicateKey, e -> new IllegalStateException("Book is already borrowed"))
+                  .doOnNext(activeLoans::put)
+                  .doOnNext(saved -> availabilityEvents.borrowed(List.of(book)))
+                  .map(saved -> toDto(saved, book));
+            })));
   }
 
+  /**
+   * Returns the loan. Returning a loan that is already returned, e.g. a retried request, does nothing, also once the
+   * loan was archived. The loan is only updated while still active, so of concurrent returns only one writes the event
+   * and publishes the book as available.
+   */
   public Mono<Void> returnBook(Long loanId, String userName) {
-    Mono<UserEntity> userMono = userRepository.findByUsername(userName)
-        .switchIfEmpty(Mono.error(new NoSuchElementException("User not found")));
-
     Mono<LoanEntity> loanMono = loanRepository.findById(loanId)
+        .switchIfEmpty(Mono.defer(() -> loanRepository.findArchivedById(loanId)))
         .switchIfEmpty(Mono.error(new NoSuchElementException("Loan not found")));
 
-    return userMono.zipWith(loanMono)
+    return findUserId(userName).zipWith(loanMono)
         .flatMap(tuple -> {
-          var user = tuple.getT1();
+          var userId = tuple.getT1();
           var loan = tuple.getT2();
 
-          if (!Objects.equals(loan.userId, user.id)) {
+          if (!Objects.equals(loan.userId, userId)) {
             return Mono.error(new IllegalStateException("User is not the owner of the loan"));
           }
+          if (loan.returnedAt != null) {
+            return Mono.empty();
+          }
 
           loan.returnedAt = Instant.now();
-          return loanRepository.save(loan).then(); // Mono<Void>
+          return transactionalOperator.transactional(returnWithEvent(loan))
+              .doOnNext(saved -> activeLoans.remove(saved.bookId, saved.id))
+              .flatMap(saved -> availabilityEvents.returned(List.of(saved.bookId)));
         });
   }
 
-  private LoanDto toDto(LoanEntity loan, BookWithLoanProjection book) {
+  /**
+   * Resolves the user id from the authentication of the user, or from the cache when acting for another user.
+   */
+  private Mono<Long> findUserId(String userName) {
+    return userIdResolver.resolve(userName)
+        .switchIfEmpty(Mono.error(new NoSuchElementException("User not found")));
+  }
+
+  /**
+   * Sets returnedAt of the loan if it is still active and writes the outbox event, to be run in one transaction.
+   * Empty if the loan was returned concurrently.
+   */
+  private Mono<LoanEntity> returnWithEvent(LoanEntity loan) {
+    return loanRepository.returnLoans(List.of(loan.id), loan.returnedAt)
+        .filter(updated -> updated > 0)
+        .flatMap(updated -> loanEventOutbox.append(List.of(loan.id), LoanEventEntity.RETURNED, loan.returnedAt)
+            .thenReturn(loan));
+  }
+
+  /**
+   * Saves the loan and its outbox event, to be run in one transaction.
+   */
+  private Mono<LoanEntity> saveWithEvent(LoanEntity loan, String type, Instant occurredAt) {
+    return loanRepository.save(loan)
+        .flatMap(saved -> loanEventOutbox.append(List.of(saved.id), type, occurredAt).thenReturn(saved));
+  }
+
+  static boolean isDuplicateKey(Throwable e) {
+    return e instanceof DataIntegrityViolationException || e instanceof R2dbcDataIntegrityViolationException;
+  }
+
+  /**
+   * True for an InnoDB deadlock (MySQL error 1213), the transaction was rolled back and can be retried. The driver
+   * does not map every MySQL error to its R2DBC error code, so the message is checked as well.
+   */
+  static boolean isDeadlock(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof R2dbcException r2dbc && r2dbc.getErrorCode() == MYSQL_DEADLOCK) {
+        return true;
+      }
+      if (t.getMessage() != null && t.getMessage().contains("Deadlock found")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static PageCursor decodeCursor(String after) {
+    PageCursor cursor = PageCursor.decode(after);
+    if (!cursor.sortBy().equals(CURSOR_SORT)) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+    try {
+      Instant.parse(cursor.key());
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+    return cursor;
+  }
+
+  private static String cursorOf(LoanWithBookProjection loan) {
+    return new PageCursor(CURSOR_SORT, loan.getBorrowedAt().toString(), loan.getId()).encode();
+  }
+
+  private Mono<List<LoanWithBookProjection>> withDescriptions(List<LoanWithBookProjection> loans) {
+    if (loans.isEmpty()) {
+      return Mono.just(loans);
+    }
+    return bookRepository.findDescriptionsByIdIn(loans.stream().map(LoanWithBookProjection::getBookId).distinct().toList())
+        .collectMap(b -> b.id, b -> b.description)
+        .map(descriptions -> {
+          loans.forEach(l -> l.setDescription(descriptions.get(l.getBookId())));
+          return loans;
+        });
+  }
+
+  private LoanDto toDto(LoanEntity loan, BookEntity book) {
     return new LoanDto(
         loan.id,
         new BookDto(
-            book.getIsbn(),
-            book.getTitle(),
-            book.getAuthor(),
-            book.getPublishedAt(),
-            book.getPublisher(),
-            book.getLanguage(),
-            book.getPages(),
-            book.getDescription(),
+            book.isbn,
+            book.title,
+            book.author,
+            book.publishedAt,
+            book.publisher,
+            book.language,
+            book.pages,
+            book.description,
             null
         ),
         loan.borrowedAt,
         loan.returnedAt);
   }
 
-  private LoanDto toDto(LoanWithBookProjection loan) {
+  private LoanDto toDto(LoanWithBookProjection loan, BookFields fields) {
     return new LoanDto(loan.getId(),
-        new BookDto(
+        fields.apply(new BookDto(
             loan.getIsbn(),
             loan.getTitle(),
             loan.getAuthor(),
@@ -116,7 +271,7 @@ public class LoanService {
             loan.getPages(),
             loan.getDescription(),
             null
-        ),
+        )),
         loan.getBorrowedAt(),
         loan.getReturnedAt());
   }
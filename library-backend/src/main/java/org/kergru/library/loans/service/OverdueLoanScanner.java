@@ -0,0 +1,159 @@
+package org.kergru.library.loans.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kergru.library.loans.repository.JobCheckpointRepository;
+import org.kergru.library.loans.repository.LoanEntity;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Marks active loans borrowed longer than {@code loan-period} ago as overdue ({@code loans.overdue_at}) and writes an
+ * OVERDUE event to the outbox, so the change feed consumers are notified.
+ *
+ * <p>Each run only reads the candidates, active loans not yet marked and borrowed before the due date, in borrowedAt
+ * order in chunks of {@code chunk-size}. Up to {@code concurrency} chunks are processed in parallel, each in its own
+ * short transaction. The id of the last loan of the last processed chunk is stored in {@code job_checkpoints}, a run
+ * continues behind it after a restart. A completed pass resets the checkpoint.
+ *
+ * <p>Metrics: {@code library.loans.overdue.scanned} and {@code library.loans.overdue.marked} (loans, their rate is the
+ * throughput), {@code library.loans.overdue.chunk} (processing time per chunk) and
+ * {@code library.loans.overdue.checkpoint} (last processed loan id).
+ */
+@Component
+public class OverdueLoanScanner {
+
+  static final String JOB_NAME = "overdue-loans";
+
+  private final LoanRepository loanRepository;
+
+  private final LoanEventOutbox loanEventOutbox;
+
+  private final JobCheckpointRepository checkpointRepository;
+
+  private final TransactionalOperator transactionalOperator;
+
+  private final Duration loanPeriod;
+
+  private final int chunkSize;
+
+  private final int concurrency;
+
+  private final Counter scanned;
+
+  private final Counter marked;
+
+  private final Timer chunkTimer;
+
+  private final AtomicLong checkpoint = new AtomicLong();
+
+  public OverdueLoanScanner(
+      LoanRepository loanRepository,
+      LoanEventOutbox loanEventOutbox,
+      JobCheckpointRepository checkpointRepository,
+      TransactionalOperator transactionalOperator,
+      MeterRegistry meterRegistry,
+      @Value("${library.loans.overdue.loan-period:P28D}") Duration loanPeriod,
+      @Value("${library.loans.overdue.chunk-size:1000}") int chunkSize,
+      @Value("${library.loans.overdue.concurrency:4}") int concurrency
+  ) {
+    this.loanRepository = loanRepository;
+    this.loanEventOutbox = loanEventOutbox;
+    this.checkpointRepository = checkpointRepository;
+    this.transactionalOperator = transactionalOperator;
+    this.loanPeriod = loanPeriod;
+    this.chunkSize = chunkSize;
+    this.concurrency = concurrency;
+    this.scanned = meterRegistry.counter("library.loans.overdue.scanned");
+    this.marked = meterRegistry.counter("library.loans.overdue.marked");
+    this.chunkTimer = meterRegistry.timer("library.loans.overdue.chunk");
+    Gauge.builder("library.loans.overdue.checkpoint", checkpoint, AtomicLong::get).register(meterRegistry);
+  }
+
+  /**
+   * Blocks the scheduler thread until the pass is done, so runs never overlap.
+   */
+  @Scheduled(
+      fixedDelayString = "${library.loans.overdue.interval:PT5M}",
+      initialDelayString = "${library.loans.overdue.interval:PT5M}")
+  public void scanScheduled() {
+    try {
+      Long overdue = scan(Instant.now()).block();
+      System.out.println("Loans marked overdue: " + overdue);
+    } catch (RuntimeException e) {
+      System.err.println("Error scanning overdue loans: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Continues the pass behind the checkpoint, marks the loans borrowed before {@code now - loan-period} and emits
+   * their number. Chunks are read ahead while earlier ones are processed, the checkpoint only advances in chunk order.
+   * If the checkpoint loan no longer exists the pass starts at the beginning, marked loans are no candidates anymore.
+   */
+  public Mono<Long> scan(Instant now) {
+    Instant dueBefore = now.minus(loanPeriod);
+
+    return checkpointRepository.findPosition(JOB_NAME)
+        .flatMap(loanRepository::findById)
+        .flatMap(last -> nextChunk(dueBefore, last))
+        .switchIfEmpty(Mono.defer(() -> nextChunk(dueBefore, null)))
+        .expand(chunk -> chunk.size() < chunkSize ? Mono.empty() : nextChunk(dueBefore, chunk.getLast()))
+        .filter(chunk -> !chunk.isEmpty())
+        .flatMapSequential(chunk -> process(chunk, now), concurrency)
+        .concatMap(result -> saveCheckpoint(result.lastId()).thenReturn(result.marked()))
+        .reduce(0L, Long::sum)
+        .flatMap(total -> saveCheckpoint(0L).thenReturn(total));
+  }
+
+  /**
+   * Reads the candidates behind {@code last}, from the beginning if null.
+   */
+  private Mono<List<LoanEntity>> nextChunk(Instant dueBefore, LoanEntity last) {
+    return loanRepository.findOverdueCandidates(
+            dueBefore, last != null ? last.borrowedAt : null, last != null ? last.id : 0L, chunkSize)
+        .collectList();
+  }
+
+  private Mono<ChunkResult> process(List<LoanEntity> chunk, Instant now) {
+    List<Long> due = chunk.stream().map(l -> l.id).toList();
+
+    return Mono.defer(() -> {
+      Timer.Sample sample = Timer.start();
+      return transactionalOperator.transactional(markOverdue(due, now)).map(count -> {
+        sample.stop(chunkTimer);
+        scanned.increment(chunk.size());
+        marked.increment(count);
+        return new ChunkResult(chunk.getLast().id, count);
+      });
+    });
+  }
+
+  private Mono<Long> markOverdue(List<Long> ids, Instant now) {
+    return loanRepository.findNotOverdueIdsForUpdate(ids).collectList()
+        .flatMap(locked -> locked.isEmpty()
+            ? Mono.just(0L)
+            : loanRepository.markOverdue(locked, now)
+                .then(loanEventOutbox.append(locked, LoanEventEntity.OVERDUE, now))
+                .thenReturn((long) locked.size()));
+  }
+
+  private Mono<Long> saveCheckpoint(long position) {
+    return checkpointRepository.savePosition(JOB_NAME, position, Instant.now())
+        .doOnNext(updated -> checkpoint.set(position));
+  }
+
+  private record ChunkResult(long lastId, long marked) {
+
+  }
+}
@@ -0,0 +1,28 @@
+package org.kergru.library.paging;
+
+import java.util.Locale;
+
+/**
+ * How the total number of elements of a paged search is determined.
+ * <ul>
+ *   <li>{@code exact}: COUNT query, cached for a short time per search string</li>
+ *   <li>{@code estimate}: table statistics for unfiltered searches, otherwise like {@code exact}</li>
+ *   <li>{@code none}: no count at all, the page only reports whether a next page exists</li>
+ * </ul>
+ */
+public enum CountMode {
+  EXACT,
+  ESTIMATE,
+  NONE;
+
+  /**
+   * Parses the request parameter value (case-insensitive), throws an {@link IllegalArgumentException} for unknown values.
+   */
+  public static CountMode of(String value) {
+    try {
+      return valueOf(value.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid count mode: " + value);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package org.kergru.library.paging;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Base64;
+
+/**
+ * Keyset (seek) cursor pointing behind the last row of a page.
+ * Holds the sort column, the sort key of the last row and its id as tie-breaker.
+ * Clients only see the opaque, URL safe encoded form and pass it back unchanged as {@code after} parameter.
+ */
+public record PageCursor(String sortBy, String key, long id) {
+
+  public String encode() {
+    String raw = sortBy + '\n' + id + '\n' + key;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(UTF_8));
+  }
+
+  /**
+   * Decodes a cursor token, throws an {@link IllegalArgumentException} if the token is malformed.
+   */
+  public static PageCursor decode(String token) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(token), UTF_8);
+      String[] parts = raw.split("\n", 3);
+      if (parts.length != 3) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      return new PageCursor(parts[0], parts[2], Long.parseLong(parts[1]));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+  }
+}
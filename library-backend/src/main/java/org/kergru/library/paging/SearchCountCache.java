@@ -0,0 +1,59 @@
+package org.kergru.library.paging;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Short-lived cache for the total counts of paged searches, keyed by scope (e.g. "books") and normalized search string.
+ * Clicking through the pages of one search then runs the COUNT query only once per TTL.
+ * Concurrent requests for the same key share one COUNT query. Writes invalidate the affected scope.
+ */
+@Component
+public class SearchCountCache {
+
+  private final AsyncCache<String, Long> cache;
+
+  public SearchCountCache(
+      @Value("${library.paging.count-cache.ttl:PT30S}") Duration ttl,
+      @Value("${library.paging.count-cache.max-size:10000}") long maxSize
+  ) {
+    this.cache = Caffeine.newBuilder()
+        .expireAfterWrite(ttl)
+        .maximumSize(maxSize)
+        .recordStats()
+        .buildAsync();
+  }
+
+  /**
+   * Returns the cached count for the search or subscribes to {@code count} to compute it. A cancelled subscriber does
+   * not cancel the shared COUNT query.
+   */
+  public Mono<Long> get(String scope, String searchString, Supplier<Mono<Long>> count) {
+    return get(scope, searchString, "", count);
+  }
+
+  /**
+   * Like {@link #get(String, String, Supplier)} for searches with further filters, {@code filter} identifies them.
+   */
+  public Mono<Long> get(String scope, String searchString, String filter, Supplier<Mono<Long>> count) {
+    return Mono.fromFuture(
+        () -> cache.get(key(scope, searchString, filter), (key, executor) -> count.get().toFuture()), true);
+  }
+
+  public void invalidate(String scope) {
+    String prefix = scope + ':';
+    cache.synchronous().asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  // searches are case-insensitive (utf8mb4_unicode_ci), so are the keys
+  private static String key(String scope, String searchString, String filter) {
+    return scope + ':' + filter.toLowerCase(Locale.ROOT) + ':'
+        + (searchString == null ? "" : searchString.toLowerCase(Locale.ROOT));
+  }
+}
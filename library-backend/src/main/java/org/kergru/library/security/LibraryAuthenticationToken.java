@@ -0,0 +1,64 @@
+package org.kergru.library.security;
+
+import java.util.Collection;
+import java.util.function.Function;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import reactor.core.publisher.Mono;
+
+/**
+ * JWT authentication that also carries the id of the library user, so loan requests need no user lookup.
+ *
+ * <p>The id is taken from the claim {@code claimName} if the token has one, otherwise it is looked up by the user name
+ * on first use. The resource server is stateless and converts the JWT on every request, so the looked up id is only
+ * shared within one request; across requests the lookup is answered by the {@code UserIdCache}.
+ */
+public class LibraryAuthenticationToken extends JwtAuthenticationToken {
+
+  public static final String USER_NAME_CLAIM = "preferred_username";
+
+  private final String userName;
+
+  private final transient Mono<Long> userId;
+
+  public LibraryAuthenticationToken(
+      Jwt jwt,
+      Collection<? extends GrantedAuthority> authorities,
+      String claimName,
+      Function<String, Mono<Long>> lookup
+  ) {
+    super(jwt, authorities);
+    this.userName = jwt.getClaimAsString(USER_NAME_CLAIM);
+    Long claimed = claimName != null ? userIdClaim(jwt, claimName) : null;
+    this.userId = claimed != null
+        ? Mono.just(claimed)
+        : Mono.defer(() -> userName != null ? lookup.apply(userName) : Mono.<Long>empty()).cache();
+  }
+
+  public String getUserName() {
+    return userName;
+  }
+
+  /**
+   * Returns the id of the authenticated user, empty if there is no library user with the name.
+   */
+  public Mono<Long> getUserId() {
+    return userId;
+  }
+
+  private static Long userIdClaim(Jwt jwt, String claimName) {
+    Object value = jwt.getClaim(claimName);
+    if (value instanceof Number number) {
+      return number.longValue();
+    }
+    if (value instanceof String text) {
+      try {
+        return Long.valueOf(text);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
 import org.kergru.library.security.logging.JwtLoggingFilter;
+import org.kergru.library.users.service.UserIdCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
@@ -15,7 +17,6 @@ import org.springframework.security.config.web.server.ServerHttpSecurity.CsrfSpe
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import reactor.core.publisher.Mono;
@@ -38,34 +39,48 @@ import reactor.core.publisher.Mono;
  *   <li><b>Role Mapping</b>: Maps Keycloak realm roles to Spring Security authorities</li>
  *   <li><b>Custom Redirects</b>: Redirects users based on their roles after login</li>
  *   <li><b>Global Logout</b>: Implements single sign-out with Keycloak</li>
+ *   <li><b>User Id</b>: Carries the library user id on the authentication, see {@link LibraryAuthenticationToken}</li>
  * </ul>
+ *
+ * <p>With the default {@code library.security.user-id.mode=claim} the user id is read from the token claim
+ * {@code library.security.user-id.claim-name}, tokens without the claim fall back to the lookup. With {@code lookup}
+ * the id is always looked up by the user name in the {@link UserIdCache}.
  */
 @Configuration
 @EnableReactiveMethodSecurity
 public class OAuth2SecurityConfig {
 
+  public enum UserIdMode { LOOKUP, CLAIM }
+
   @Bean
   public SecurityWebFilterChain securityWebFilterChain(
       ServerHttpSecurity http,
-      JwtLoggingFilter jwtLoggingFilter) {
+      JwtLoggingFilter jwtLoggingFilter,
+      UserIdCache userIdCache,
+      @Value("${library.security.user-id.mode:claim}") UserIdMode userIdMode,
+      @Value("${library.security.user-id.claim-name:library_user_id}") String userIdClaim) {
 
     return http
         .csrf(CsrfSpec::disable) // service-to-service communication, token secured
         .addFilterAfter(jwtLoggingFilter, SecurityWebFiltersOrder.AUTHENTICATION)
         .authorizeExchange(exchange -> exchange
-            .pathMatchers("/actuator/**").permitAll()
+            .pathMatchers("/actuator/health", "/actuator/health/**").permitAll()
+            .pathMatchers("/actuator/**").hasRole("LIBRARIAN") // metrics
             .anyExchange().authenticated()
         )
         .oauth2ResourceServer(oauth2 -> oauth2
-            .jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuthenticationConverter()))
+            .jwt(jwt -> jwt.jwtAuthenticationConverter(
+                jwtAuthenticationConverter(userIdCache, userIdMode == UserIdMode.CLAIM ? userIdClaim : null)))
         )
         .build();
   }
 
   /**
    * JWT authentication converter that maps the re roles from the JWT token to the Spring Security authorities.
+   * The user id is read from the claim {@code userIdClaim} if not null, otherwise looked up in the {@link UserIdCache}.
    */
-  private Converter<Jwt, Mono<AbstractAuthenticationToken>> jwtAuthenticationConverter() {
+  private Converter<Jwt, Mono<AbstractAuthenticationToken>> jwtAuthenticationConverter(
+      UserIdCache userIdCache, String userIdClaim) {
     JwtGrantedAuthoritiesConverter scopesConverter = new JwtGrantedAuthoritiesConverter();
     scopesConverter.setAuthorityPrefix("SCOPE_"); // optional
 
@@ -77,7 +92,7 @@ public class OAuth2SecurityConfig {
         roles.forEach(role -> authorities.add(new SimpleGrantedAuthority("ROLE_" + role)));
       }
 
-      return Mono.just(new JwtAuthenticationToken(jwt, authorities));
+      return Mono.just(new LibraryAuthenticationToken(jwt, authorities, userIdClaim, userIdCache::get));
     };
   }
 }
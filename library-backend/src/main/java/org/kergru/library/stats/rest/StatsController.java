@@ -0,0 +1,34 @@
+package org.kergru.library.stats.rest;
+
+import org.kergru.library.model.LoanStatsDto;
+import org.kergru.library.stats.service.LoanStatistics;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/library/api")
+public class StatsController {
+
+  private final LoanStatistics loanStatistics;
+
+  public StatsController(LoanStatistics loanStatistics) {
+    this.loanStatistics = loanStatistics;
+  }
+
+  /**
+   * Returns the most borrowed books, the users with the most active loans and the daily borrows, from memory.
+   * Only accessible by the librarian. While the statistics are loading after startup a 503 is returned.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN')")
+  @GetMapping("/stats")
+  public Mono<LoanStatsDto> getStats() {
+    return Mono.fromSupplier(loanStatistics::stats)
+        .onErrorMap(IllegalStateException.class,
+            e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+  }
+}
@@ -0,0 +1,257 @@
+package org.kergru.library.stats.service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.kergru.library.loans.repository.BookBorrowCountProjection;
+import org.kergru.library.loans.repository.DailyBorrowCountProjection;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanEventProjection;
+import org.kergru.library.loans.repository.LoanRepository;
+import org.kergru.library.loans.repository.UserLoanCountProjection;
+import org.kergru.library.loans.service.LoanChangeFeed;
+import org.kergru.library.model.LoanStatsDto;
+import org.kergru.library.model.LoanStatsDto.BookBorrowCountDto;
+import org.kergru.library.model.LoanStatsDto.DailyBorrowCountDto;
+import org.kergru.library.model.LoanStatsDto.UserLoanCountDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-memory loan statistics, so librarians get them without GROUP BY queries over {@code loans} and
+ * {@code loan_history}.
+ *
+ * <p>Borrow counts per book and active loan counts per user are kept in maps plus sets ordered by count, updated in
+ * O(log n) per borrow or return, the top {@code top-k} are read from the head of the sets. Daily borrows are counted in
+ * a ring of {@code days} UTC days. {@link #stats()} therefore costs O(top-k + days), independent of the data size.
+ *
+ * <p>Loaded once the application is ready from a snapshot of the database together with its offset in the
+ * {@link LoanChangeFeed}, then maintained from the borrow and return events after that offset. A change is therefore
+ * counted exactly once, whether it happened before or during loading and on which node. The counts lag behind the
+ * loans by up to the feed's poll interval. Until loading has finished {@link #stats()} fails.
+ */
+@Component
+public class LoanStatistics {
+
+  private static final Comparator<Count> BY_COUNT_DESC =
+      Comparator.comparingLong(Count::count).reversed().thenComparingLong(Count::id);
+
+  private final LoanRepository loanRepository;
+
+  private final LoanChangeFeed loanChangeFeed;
+
+  private final int topK;
+
+  private final int days;
+
+  private final Map<Long, Count> bookCounts = new HashMap<>();
+
+  private final TreeSet<Count> booksByCount = new TreeSet<>(BY_COUNT_DESC);
+
+  private final Map<Long, Count> userCounts = new HashMap<>();
+
+  private final TreeSet<Count> usersByCount = new TreeSet<>(BY_COUNT_DESC);
+
+  private final long[] dayCounts;
+
+  private final long[] dayOfSlot;
+
+  private long activeLoans;
+
+  private volatile boolean ready;
+
+  private Disposable subscription;
+
+  public LoanStatistics(
+      LoanRepository loanRepository,
+      LoanChangeFeed loanChangeFeed,
+      @Value("${library.stats.top-k:10}") int topK,
+      @Value("${library.stats.days:30}") int days
+  ) {
+    this.loanRepository = loanRepository;
+    this.loanChangeFeed = loanChangeFeed;
+    this.topK = topK;
+    this.days = days;
+    this.dayCounts = new long[days];
+    this.dayOfSlot = new long[days];
+  }
+
+  /**
+   * Count of a book or user, {@code label} is the ISBN and title or the user name.
+   */
+  private record Count(long id, String label, String title, long count) {
+
+    Count plus(long delta) {
+      return new Count(id, label, title, count + delta);
+    }
+  }
+
+  /**
+   * Counts read from the database in one snapshot.
+   */
+  private record Snapshot(
+      List<BookBorrowCountProjection> books,
+      List<UserLoanCountProjection> users,
+      List<DailyBorrowCountProjection> perDay
+  ) {
+
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    long today = today();
+    Instant from = LocalDate.ofEpochDay(today - days + 1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    // one query after the other, they share the connection of the snapshot transaction
+    Mono<Snapshot> counts = loanRepository.countBorrowsPerBook().collectList()
+        .flatMap(books -> loanRepository.countActiveLoansPerUser().collectList()
+            .flatMap(users -> loanRepository.countBorrowsPerDay(from).collectList()
+                .map(perDay -> new Snapshot(books, users, perDay))));
+
+    subscription = loanChangeFeed.snapshot(counts)
+        .doOnNext(snapshot -> replace(snapshot.getT2()))
+        .flatMapMany(snapshot -> loanChangeFeed.followEvents(snapshot.getT1()))
+        .subscribe(
+            this::apply,
+            err -> System.err.println("Error loading loan statistics: " + err.getMessage()));
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (subscription != null) {
+      subscription.dispose();
+    }
+  }
+
+  private synchronized void replace(Snapshot snapshot) {
+    bookCounts.clear();
+    booksByCount.clear();
+    userCounts.clear();
+    usersByCount.clear();
+    Arrays.fill(dayCounts, 0);
+    Arrays.fill(dayOfSlot, 0);
+    activeLoans = 0;
+
+    snapshot.books().forEach(b -> set(bookCounts, booksByCount,
+        new Count(b.getBookId(), b.getIsbn(), b.getTitle(), b.getBorrowCount())));
+    snapshot.users().forEach(u -> {
+      set(userCounts, usersByCount, new Count(u.getUserId(), u.getUsername(), null, u.getLoanCount()));
+      activeLoans += u.getLoanCount();
+    });
+    snapshot.perDay().forEach(d -> addDay(d.getDay(), d.getBorrowCount()));
+    ready = true;
+    System.out.println("Loan statistics loaded: " + bookCounts.size() + " books, " + activeLoans + " active loans");
+  }
+
+  /**
+   * Counts a borrow or return event of the change feed, other events are ignored.
+   */
+  void apply(LoanEventProjection event) {
+    switch (event.getType()) {
+      case LoanEventEntity.BORROWED -> borrowed(
+          event.getBookId(), event.getIsbn(), event.getTitle(), event.getUserId(), event.getUsername(),
+          event.getOccurredAt());
+      case LoanEventEntity.RETURNED -> returned(event.getUserId(), event.getUsername());
+      default -> {
+      }
+    }
+  }
+
+  synchronized void borrowed(long bookId, String isbn, String title, long userId, String userName, Instant borrowedAt) {
+    add(bookCounts, booksByCount, new Count(bookId, isbn, title, 0), 1);
+    add(userCounts, usersByCount, new Count(userId, userName, null, 0), 1);
+    addDay(borrowedAt.atOffset(ZoneOffset.UTC).toLocalDate().toEpochDay(), 1);
+    activeLoans++;
+  }
+
+  /**
+   * Counts a loan that changed from active to returned. Ignored if no active loan of the user is counted, which only
+   * happens for loans changed directly in the database, so the counts never become negative.
+   */
+  synchronized void returned(long userId, String userName) {
+    if (!userCounts.containsKey(userId)) {
+      return;
+    }
+    add(userCounts, usersByCount, new Count(userId, userName, null, 0), -1);
+    activeLoans--;
+  }
+
+  /**
+   * Returns the statistics, fails with {@link IllegalStateException} until loaded.
+   */
+  public LoanStatsDto stats() {
+    if (!ready) {
+      throw new IllegalStateException("Loan statistics are not loaded yet");
+    }
+    return stats(today());
+  }
+
+  synchronized LoanStatsDto stats(long today) {
+    List<BookBorrowCountDto> books = booksByCount.stream()
+        .limit(topK)
+        .map(c -> new BookBorrowCountDto(c.label(), c.title(), c.count()))
+        .toList();
+    List<UserLoanCountDto> users = usersByCount.stream()
+        .limit(topK)
+        .map(c -> new UserLoanCountDto(c.label(), c.count()))
+        .toList();
+    List<DailyBorrowCountDto> daily = new ArrayList<>(days);
+    for (long day = today - days + 1; day <= today; day++) {
+      int slot = slot(day);
+      daily.add(new DailyBorrowCountDto(LocalDate.ofEpochDay(day), dayOfSlot[slot] == day ? dayCounts[slot] : 0));
+    }
+    return new LoanStatsDto(activeLoans, books, users, daily);
+  }
+
+  /**
+   * Adds delta to the count of the entry, removes the entry when it drops to 0.
+   */
+  private static void add(Map<Long, Count> counts, TreeSet<Count> byCount, Count entry, long delta) {
+    Count old = counts.get(entry.id());
+    set(counts, byCount, old != null ? old.plus(delta) : entry.plus(delta));
+  }
+
+  private static void set(Map<Long, Count> counts, TreeSet<Count> byCount, Count entry) {
+    Count old = entry.count() > 0 ? counts.put(entry.id(), entry) : counts.remove(entry.id());
+    if (old != null) {
+      byCount.remove(old);
+    }
+    if (entry.count() > 0) {
+      byCount.add(entry);
+    }
+  }
+
+  /**
+   * Counts borrows of the day, a slot still holding an older day is reset first.
+   */
+  private void addDay(long day, long count) {
+    int slot = slot(day);
+    if (dayOfSlot[slot] != day) {
+      if (dayOfSlot[slot] > day) {
+        return; // older than the window
+      }
+      dayOfSlot[slot] = day;
+      dayCounts[slot] = 0;
+    }
+    dayCounts[slot] += count;
+  }
+
+  private int slot(long day) {
+    return (int) Math.floorMod(day, (long) days);
+  }
+
+  private static long today() {
+    return LocalDate.now(ZoneOffset.UTC).toEpochDay();
+  }
+}
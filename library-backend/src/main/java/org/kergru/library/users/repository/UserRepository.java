@@ -1,12 +1,8 @@
 package org.kergru.library.users.repository;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
-import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -14,6 +10,13 @@ public interface UserRepository extends ReactiveCrudRepository<UserEntity, Long>
 
   Mono<UserEntity> findByUsername(String username);
 
+  @Query("""
+    SELECT u.id
+    FROM users u
+    WHERE u.username = :username
+    """)
+  Mono<Long> findIdByUsername(@Param("username") String username);
+
   @Query("""
     SELECT u.*
     FROM users u
@@ -48,17 +51,13 @@ public interface UserRepository extends ReactiveCrudRepository<UserEntity, Long>
     """)
   Mono<Long> countUsers(@Param("searchString") String searchString);
 
-  default Mono<Page<UserEntity>> searchUsersPaged(String searchString, int page, int size, String sortBy) {
-    String search = StringUtils.hasText(searchString) ? searchString : null;
-    long offset = (long) page * size;
-
-    return searchUsers(search, size, offset, sortBy)
-        .collectList()
-        .zipWith(countUsers(search))
-        .map(tuple -> new PageImpl<>(
-            tuple.getT1(),
-            PageRequest.of(page, size),
-            tuple.getT2()
-        ));
-  }
+  /**
+   * Row count estimate from the table statistics, avoids a full COUNT for unfiltered searches.
+   */
+  @Query("""
+    SELECT CAST(COALESCE(t.TABLE_ROWS, 0) AS SIGNED)
+    FROM information_schema.TABLES t
+    WHERE t.TABLE_SCHEMA = DATABASE() AND t.TABLE_NAME = 'users'
+    """)
+  Mono<Long> estimateUserCount();
 }
@@ -1,17 +1,31 @@
 package org.kergru.library.users.rest;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.kergru.library.books.service.BookFields;
+import org.kergru.library.loans.service.LoanBatchService;
+import org.kergru.library.loans.service.LoanFilter;
 import org.kergru.library.loans.service.LoanService;
+import org.kergru.library.model.LoanBatchItemDto;
 import org.kergru.library.model.LoanDto;
 import org.kergru.library.model.PageResponseDto;
 import org.kergru.library.model.UserDto;
+import org.kergru.library.paging.CountMode;
 import org.kergru.library.users.service.UserService;
+import org.kergru.library.web.ETags;
+import org.kergru.library.web.IdempotencyCache;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -27,13 +41,25 @@ public class UserController {
 
   private final LoanService loanService;
 
-  public UserController(UserService userService, LoanService loanService) {
+  private final LoanBatchService loanBatchService;
+
+  private final IdempotencyCache idempotencyCache;
+
+  public UserController(
+      UserService userService,
+      LoanService loanService,
+      LoanBatchService loanBatchService,
+      IdempotencyCache idempotencyCache
+  ) {
     this.userService = userService;
     this.loanService = loanService;
+    this.loanBatchService = loanBatchService;
+    this.idempotencyCache = idempotencyCache;
   }
 
   /**
-   * Returns paged search result of users by userName, firstName, lastName, email
+   * Returns paged search result of users by userName, firstName, lastName, email.
+   * {@code count} is one of exact, estimate or none, see {@link CountMode}.
    */
   @GetMapping("/users")
   @PreAuthorize("hasRole('LIBRARIAN')")
@@ -41,52 +67,120 @@ public class UserController {
       @RequestParam(required = false) String searchString,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
-      @RequestParam(defaultValue = "firstName") String sortBy
+      @RequestParam(defaultValue = "firstName") String sortBy,
+      @RequestParam(defaultValue = "exact") String count
   ) {
-    return userService.searchUsers(searchString, page, size, sortBy);
+    return Mono.fromCallable(() -> CountMode.of(count))
+        .flatMap(mode -> userService.searchUsers(searchString, page, size, sortBy, mode))
+        .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
   }
   /**
-   * Returns user profile by userName, only accessible by the librarian or the user himself
+   * Returns user profile by userName, only accessible by the librarian or the user himself.
+   * The profile carries an ETag, a request with a matching {@code If-None-Match} is answered with 304.
    */
   @GetMapping("/users/{userName}")
   @PreAuthorize("hasRole('LIBRARIAN') or #userName == authentication.principal.claims['preferred_username']")
-  public Mono<UserDto> getUser(@PathVariable String userName) {
+  public Mono<ResponseEntity<UserDto>> getUser(@PathVariable String userName) {
 
     return userService.getUser(userName)
+        .map(ETags::ok)
         .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found")));
   }
 
   /**
-   * All borrowed books by a user, only accessible by the librarian or the user himself
+   * Paged loans of a user, newest first, only accessible by the librarian or the user himself.
+   * {@code status} (active or returned) and the borrowedAt range {@code from} - {@code to} (ISO dates, inclusive)
+   * filter the loans. Pages are cursor based: {@code after} is the nextCursor of the previous page.
+   * {@code fields} (comma separated, e.g. title,author) restricts the returned book fields, default all.
    */
   @PreAuthorize("hasRole('LIBRARIAN') or #userName == authentication.principal.claims['preferred_username']")
   @GetMapping("/users/{userName}/loans")
-  public Flux<LoanDto> getBorrowedBooksByUser(@PathVariable String userName) {
-
-    return loanService.getBorrowedBooksByUser(userName)
-        .onErrorMap(e -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+  public Mono<PageResponseDto<LoanDto>> getBorrowedBooksByUser(
+      @PathVariable String userName,
+      @RequestParam(required = false) String status,
+      @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate to,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "20") int size,
+      @RequestParam(required = false) String fields
+  ) {
+    return Mono.fromCallable(() -> LoanFilter.of(status, from, to))
+        .zipWith(Mono.fromCallable(() -> BookFields.parse(fields)))
+        .flatMap(t -> loanService.getBorrowedBooksByUser(userName, t.getT1(), after, size, t.getT2()))
+        .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+        .onErrorMap(NoSuchElementException.class, e -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
   }
   /**
    * Borrows a book to a user. Endpoint is only available for the user himself.
    * If the book is already borrowed, a 409 Conflict is returned.
+   * A retry with the same {@code Idempotency-Key} header gets the original response, see {@link IdempotencyCache}.
    */
   @PreAuthorize("#userName == authentication.principal.claims['preferred_username']")
   @PostMapping("/users/{userName}/loans")
-  public Mono<LoanDto> borrowBook(@PathVariable String userName, @RequestBody String isbn) {
+  public Mono<LoanDto> borrowBook(
+      @PathVariable String userName,
+      @RequestBody String isbn,
+      @RequestHeader(name = IdempotencyCache.HEADER, required = false) String idempotencyKey
+  ) {
 
-      return loanService.borrowBook(isbn, userName)
+      return idempotencyCache.execute(idempotencyKey, userName + "|borrow|" + isbn, loanService.borrowBook(isbn, userName))
           .onErrorMap(e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()));
   }
 
+  /**
+   * Borrows several books to a user at once, accessible by the librarian or the user himself.
+   * Returns the outcome per ISBN, books that are unknown or already borrowed are reported and skipped.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN') or #userName == authentication.principal.claims['preferred_username']")
+  @PostMapping("/users/{userName}/loans/batch")
+  public Flux<LoanBatchItemDto> borrowBooks(@PathVariable String userName, @RequestBody List<String> isbns) {
+
+    return loanBatchService.borrowBooks(userName, isbns)
+        .onErrorMap(this::toBatchError);
+  }
+
+  /**
+   * Returns several loans of a user at once, e.g. from the drop box, accessible by the librarian or the user himself.
+   * Returns the outcome per loan id, loans that are unknown, returned or not the user's are reported and skipped.
+   */
+  @PreAuthorize("hasRole('LIBRARIAN') or #userName == authentication.principal.claims['preferred_username']")
+  @PostMapping("/users/{userName}/loans/batch-return")
+  public Flux<LoanBatchItemDto> returnBooks(@PathVariable String userName, @RequestBody List<Long> loanIds) {
+
+    return loanBatchService.returnBooks(userName, loanIds)
+        .onErrorMap(this::toBatchError);
+  }
+
   /**
    * Returns a book to library by setting returnedAt date in loan. Endpoint is only available for the user himself.
-   * If no loan with id found or loan not borrowed by user, a 404 NotFound is returned.
+   * If no loan with id found or loan not borrowed by user, a 404 NotFound is returned. A loan that is already returned
+   * is left unchanged.
+   * A retry with the same {@code Idempotency-Key} header gets the original response, see {@link IdempotencyCache}.
    */
   @PreAuthorize("#userName == authentication.principal.claims['preferred_username']")
   @DeleteMapping("/users/{userName}/loans/{loanId}")
-  public Mono<Void> returnBook(@PathVariable String userName, @PathVariable long loanId) {
+  public Mono<Void> returnBook(
+      @PathVariable String userName,
+      @PathVariable long loanId,
+      @RequestHeader(name = IdempotencyCache.HEADER, required = false) String idempotencyKey
+  ) {
 
-    return loanService.returnBook(loanId, userName)
+    return idempotencyCache.execute(idempotencyKey, userName + "|return|" + loanId, loanService.returnBook(loanId, userName))
         .onErrorMap(e -> new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage()));
   }
+
+  private Throwable toBatchError(Throwable e) {
+    if (e instanceof IllegalArgumentException) {
+      return new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    if (e instanceof NoSuchElementException) {
+      return new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+    }
+    if (e instanceof IllegalStateException) {
+      return new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+    }
+    // no driver details to the client
+    System.err.println("Error in loan batch: " + e.getMessage());
+    return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Loan batch failed", e);
+  }
 }
@@ -0,0 +1,83 @@
+package org.kergru.library.users.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.kergru.library.users.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Bounded cache of user ids by user name, so loan requests do not need a user query each.
+ *
+ * <p>Unknown user names are cached as well, for the shorter {@code negative-ttl}, so requests for them do not reach the
+ * database either. User names never change their id, known users expire after {@code ttl}. Code that creates, renames
+ * or deletes users calls {@link #invalidate(String)}. Hit and miss counts are published as {@code cache.*} metrics with
+ * the tag {@code cache=users.idByName}.
+ */
+@Component
+public class UserIdCache {
+
+  // ids are positive
+  private static final long UNKNOWN = 0L;
+
+  private final UserRepository userRepository;
+
+  private final AsyncCache<String, Long> cache;
+
+  public UserIdCache(
+      UserRepository userRepository,
+      MeterRegistry meterRegistry,
+      @Value("${library.users.id-cache.ttl:PT1H}") Duration ttl,
+      @Value("${library.users.id-cache.negative-ttl:PT1M}") Duration negativeTtl,
+      @Value("${library.users.id-cache.max-size:10000}") long maxSize
+  ) {
+    this.userRepository = userRepository;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfter(new Expiry<String, Long>() {
+          @Override
+          public long expireAfterCreate(String key, Long id, long currentTime) {
+            return (id == UNKNOWN ? negativeTtl : ttl).toNanos();
+          }
+
+          @Override
+          public long expireAfterUpdate(String key, Long id, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, id, currentTime);
+          }
+
+          @Override
+          public long expireAfterRead(String key, Long id, long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "users.idByName");
+  }
+
+  /**
+   * Returns the id of the user, empty if there is no user with the name.
+   * Concurrent lookups of the same name share one database query, a cancelled subscriber does not cancel it. Failed
+   * lookups are not cached.
+   */
+  public Mono<Long> get(String userName) {
+    return Mono.fromFuture(() -> cache.get(userName, (key, executor) -> userRepository.findIdByUsername(key)
+                .defaultIfEmpty(UNKNOWN)
+                .toFuture()),
+            true)
+        .filter(id -> id != UNKNOWN);
+  }
+
+  public void invalidate(String userName) {
+    cache.synchronous().invalidate(userName);
+  }
+
+  public void invalidateAll() {
+    cache.synchronous().invalidateAll();
+  }
+}
@@ -0,0 +1,33 @@
+package org.kergru.library.users.service;
+
+import org.kergru.library.security.LibraryAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves user ids for loan requests. Requests of the authenticated user take the id carried by the authentication,
+ * see {@link LibraryAuthenticationToken}, all others, e.g. a librarian acting for a user, use the {@link UserIdCache}.
+ */
+@Component
+public class UserIdResolver {
+
+  private final UserIdCache userIdCache;
+
+  public UserIdResolver(UserIdCache userIdCache) {
+    this.userIdCache = userIdCache;
+  }
+
+  /**
+   * Returns the id of the user, empty if there is no user with the name.
+   */
+  public Mono<Long> resolve(String userName) {
+    return ReactiveSecurityContextHolder.getContext()
+        .map(SecurityContext::getAuthentication)
+        .filter(auth -> auth instanceof LibraryAuthenticationToken token && userName.equals(token.getUserName()))
+        .map(auth -> ((LibraryAuthenticationToken) auth).getUserId())
+        .defaultIfEmpty(Mono.defer(() -> userIdCache.get(userName)))
+        .flatMap(userId -> userId);
+  }
+}
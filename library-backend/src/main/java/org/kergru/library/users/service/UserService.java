@@ -3,38 +3,82 @@ package org.kergru.library.users.service;
 import java.util.stream.Collectors;
 import org.kergru.library.model.PageResponseDto;
 import org.kergru.library.model.UserDto;
+import org.kergru.library.paging.CountMode;
+import org.kergru.library.paging.SearchCountCache;
 import org.kergru.library.users.repository.UserEntity;
 import org.kergru.library.users.repository.UserRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Mono;
 
 @Service
 public class UserService {
 
+  private static final String COUNT_SCOPE = "users";
+
   private final UserRepository repository;
 
-  public UserService(UserRepository repository) {
+  private final SearchCountCache countCache;
+
+  private final UserIdCache userIdCache;
+
+  public UserService(UserRepository repository, SearchCountCache countCache, UserIdCache userIdCache) {
     this.repository = repository;
+    this.countCache = countCache;
+    this.userIdCache = userIdCache;
   }
 
+  /**
+   * Resolves the id from the {@link UserIdCache} and reads the user by primary key, unknown users are answered from
+   * the cache.
+   */
   public Mono<UserDto> getUser(String userName) {
-    return repository.findByUsername(userName).map(this::toDto);
+    return userIdCache.get(userName)
+        .flatMap(repository::findById)
+        .map(this::toDto);
+  }
+
+  /**
+   * Fetches one row more than requested to determine {@code last}, the total is counted as requested by {@code count}.
+   */
+  public Mono<PageResponseDto<UserDto>> searchUsers(String searchString, int page, int size, String sortBy, CountMode count) {
+    String search = StringUtils.hasText(searchString) ? searchString : null;
+
+    return repository.searchUsers(search, size + 1, (long) page * size, sortBy)
+        .collectList()
+        .zipWith(total(search, count))
+        .map(tuple -> {
+          var fetched = tuple.getT1();
+          boolean hasNext = fetched.size() > size;
+          var rows = hasNext ? fetched.subList(0, size) : fetched;
+          long total = tuple.getT2() == PageResponseDto.UNKNOWN_TOTAL
+              ? PageResponseDto.UNKNOWN_TOTAL
+              : Math.max(tuple.getT2(), (long) page * size + fetched.size());
+
+          return new PageResponseDto<>(
+              rows.stream().map(this::toDto).collect(Collectors.toList()),
+              page,
+              size,
+              total == PageResponseDto.UNKNOWN_TOTAL ? PageResponseDto.UNKNOWN_TOTAL : (int) Math.ceil((double) total / size),
+              total,
+              page == 0,
+              !hasNext,
+              rows.size(),
+              rows.isEmpty(),
+              null,
+              null
+          );
+        });
   }
 
-  public Mono<PageResponseDto<UserDto>> searchUsers(String searchString, int page, int size, String sortBy) {
-
-    return repository.searchUsersPaged(searchString, page, size, sortBy)
-        .map(p -> new PageResponseDto<>(
-            p.getContent().stream().map(this::toDto).collect(Collectors.toList()),
-            p.getNumber(),
-            p.getSize(),
-            p.getTotalPages(),
-            p.getTotalElements(),
-            p.isFirst(),
-            p.isLast(),
-            p.getNumberOfElements(),
-            p.isEmpty()
-        ));
+  private Mono<Long> total(String search, CountMode count) {
+    return switch (count) {
+      case NONE -> Mono.just((long) PageResponseDto.UNKNOWN_TOTAL);
+      case ESTIMATE -> search == null
+          ? repository.estimateUserCount()
+          : countCache.get(COUNT_SCOPE, search, () -> repository.countUsers(search));
+      case EXACT -> countCache.get(COUNT_SCOPE, search, () -> repository.countUsers(search));
+    };
   }
 
   private UserDto toDto(UserEntity e) {
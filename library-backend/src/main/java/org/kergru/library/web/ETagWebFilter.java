@@ -0,0 +1,89 @@
+package org.kergru.library.web;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tags GET responses built by {@link ETags#ok(Object)} with the SHA-256 of the written body and answers a matching
+ * {@code If-None-Match} with 304 without body.
+ *
+ * <p>The encoded body is joined into one buffer to hash it before the headers are sent. Only single value bodies are
+ * tagged, streamed responses are written with {@code writeAndFlushWith} and pass through unchanged.
+ */
+@Component
+public class ETagWebFilter implements WebFilter {
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    if (!HttpMethod.GET.equals(exchange.getRequest().getMethod())) {
+      return chain.filter(exchange);
+    }
+    ServerHttpRequest request = exchange.getRequest();
+    return chain.filter(exchange.mutate().response(new TaggingResponse(exchange.getResponse(), request)).build());
+  }
+
+  private static final class TaggingResponse extends ServerHttpResponseDecorator {
+
+    private final ServerHttpRequest request;
+
+    TaggingResponse(ServerHttpResponse delegate, ServerHttpRequest request) {
+      super(delegate);
+      this.request = request;
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+      if (!HttpStatus.OK.equals(getStatusCode()) || !ETags.isTagged(getHeaders())) {
+        return super.writeWith(body);
+      }
+      return DataBufferUtils.join(body).flatMap(buffer -> {
+        String tag = "\"" + sha256(buffer) + "\"";
+        getHeaders().setETag(tag);
+        if (matches(request.getHeaders().getIfNoneMatch(), tag)) {
+          DataBufferUtils.release(buffer);
+          setStatusCode(HttpStatus.NOT_MODIFIED);
+          getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+          return setComplete();
+        }
+        return super.writeWith(Mono.just(buffer));
+      });
+    }
+
+    private static boolean matches(Iterable<String> ifNoneMatch, String tag) {
+      for (String candidate : ifNoneMatch) {
+        // weak comparison as for GET, W/"x" matches "x"
+        if (candidate.equals("*") || candidate.replaceFirst("^W/", "").equals(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static String sha256(DataBuffer buffer) {
+      try {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+          chunks.forEachRemaining(digest::update);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("Cannot compute ETag", e);
+      }
+    }
+  }
+}
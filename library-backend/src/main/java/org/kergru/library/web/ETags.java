@@ -0,0 +1,36 @@
+package org.kergru.library.web;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Strong ETags for GET responses, so clients can revalidate with {@code If-None-Match} and get a 304 without body.
+ *
+ * <p>{@link #ok(Object)} marks the response by its {@code Cache-Control}, the {@link ETagWebFilter} then tags it with
+ * the SHA-256 of the bytes the encoder writes, so the body is serialized only once. The tag covers all field values,
+ * including the loan status. JSON map entries are written sorted by key ({@code spring.jackson.serialization}), so
+ * the tag is the same on every node.
+ * The body is written as JSON or Smile depending on the Accept header, hence {@code Vary: Accept}.
+ */
+public final class ETags {
+
+  static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+  private ETags() {
+  }
+
+  public static <T> ResponseEntity<T> ok(T body) {
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL)
+        .varyBy(HttpHeaders.ACCEPT)
+        .body(body);
+  }
+
+  /**
+   * True if the response was built by {@link #ok(Object)}.
+   */
+  static boolean isTagged(HttpHeaders headers) {
+    return CACHE_CONTROL.equals(headers.getCacheControl());
+  }
+}
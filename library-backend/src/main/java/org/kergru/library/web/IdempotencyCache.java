@@ -0,0 +1,75 @@
+package org.kergru.library.web;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+
+/**
+ * Outcomes of requests sent with an {@code Idempotency-Key} header, so a retried borrow or return is answered with
+ * the original response instead of being executed again.
+ *
+ * <p>The action is started by the first subscriber and runs to completion even if that subscriber cancels, e.g. on a
+ * client timeout, so the retry gets its outcome instead of a cancellation. A retry arriving while the original request
+ * is still running waits for its outcome. Successful results and
+ * business errors ({@link IllegalArgumentException}, {@link IllegalStateException}, {@link NoSuchElementException})
+ * are kept for {@code ttl}, other errors are not kept, so the retry runs again. The size is bounded by
+ * {@code max-size}, metrics are published with the tag {@code cache=idempotency}.
+ */
+@Component
+public class IdempotencyCache {
+
+  public static final String HEADER = "Idempotency-Key";
+
+  private final AsyncCache<String, Outcome> cache;
+
+  public IdempotencyCache(
+      MeterRegistry meterRegistry,
+      @Value("${library.idempotency.ttl:PT10M}") Duration ttl,
+      @Value("${library.idempotency.max-size:10000}") long maxSize
+  ) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl)
+        .recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency");
+  }
+
+  private record Outcome(Object value, RuntimeException error) {
+
+  }
+
+  /**
+   * Runs the action once per idempotency key and replays its outcome for further calls with the same key. The key is
+   * only valid within {@code scope} (user, operation and target), so a reused key never replays the response of a
+   * different request. Without an idempotency key the action is just returned.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Mono<T> execute(String idempotencyKey, String scope, Mono<T> action) {
+    if (!StringUtils.hasText(idempotencyKey)) {
+      return action;
+    }
+    return Mono.fromFuture(() -> cache.get(scope + "|" + idempotencyKey, (k, executor) -> action
+                .map(value -> new Outcome(value, null))
+                .defaultIfEmpty(new Outcome(null, null))
+                .onErrorResume(IdempotencyCache::isReplayable, e -> Mono.just(new Outcome(null, (RuntimeException) e)))
+                .toFuture()),
+            true)
+        .flatMap(outcome -> outcome.error() != null
+            ? Mono.error(outcome.error())
+            : Mono.justOrEmpty((T) outcome.value()));
+  }
+
+  private static boolean isReplayable(Throwable e) {
+    return e instanceof IllegalArgumentException
+        || e instanceof IllegalStateException
+        || e instanceof NoSuchElementException;
+  }
+}
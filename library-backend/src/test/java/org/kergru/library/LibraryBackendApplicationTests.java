@@ -1,12 +1,17 @@
 package org.kergru.library;
 
+import static org.kergru.library.JwtTestUtils.createMockJwt;
+import static org.kergru.library.JwtTestUtils.createMockJwtWithRoleLibrarian;
+
 import java.time.Duration;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import org.testcontainers.containers.MySQLContainer;
 import org.testcontainers.containers.MySQLR2DBCDatabaseContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -47,7 +52,44 @@ class LibraryBackendApplicationTests {
         () -> "http://localhost:8085/realms/library/protocol/openid-connect/certs");
   }
 
+  @Autowired
+  private WebTestClient webTestClient;
+
   @Test
   void contextLoads() {
   }
+
+  @Test
+  void expectHealthShouldBeAccessibleWithoutAuthentication() {
+
+    webTestClient
+        .get()
+        .uri("/actuator/health")
+        .exchange()
+        .expectStatus().isOk();
+  }
+
+  @Test
+  void expectMetricsShouldOnlyBeAccessibleWithRoleLibrarian() {
+
+    webTestClient
+        .get()
+        .uri("/actuator/metrics")
+        .exchange()
+        .expectStatus().isUnauthorized();
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/actuator/metrics")
+        .exchange()
+        .expectStatus().isForbidden();
+
+    webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .get()
+        .uri("/actuator/metrics")
+        .exchange()
+        .expectStatus().isOk();
+  }
 }
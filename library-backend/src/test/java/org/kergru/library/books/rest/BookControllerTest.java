@@ -2,19 +2,27 @@ package org.kergru.library.books.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.kergru.library.JwtTestUtils.createMockJwt;
+import static org.kergru.library.JwtTestUtils.createMockJwtWithRoleLibrarian;
 
 import java.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.kergru.library.books.service.BookService;
 import org.kergru.library.loans.repository.LoanRepository;
+import org.kergru.library.loans.service.ActiveLoanIndex;
+import org.kergru.library.loans.service.AvailabilityEvents;
 import org.kergru.library.loans.service.LoanService;
 import org.kergru.library.model.BookDto;
+import org.kergru.library.model.BookImportErrorDto;
+import org.kergru.library.model.BookImportReportDto;
 import org.kergru.library.model.PageResponseDto;
+import org.kergru.library.paging.PageCursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -24,6 +32,9 @@ import org.testcontainers.containers.MySQLR2DBCDatabaseContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.MountableFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 @AutoConfigureWebTestClient
 @Testcontainers
@@ -66,9 +77,16 @@ public class BookControllerTest {
   @Autowired
   private LoanRepository loanRepository;
 
+  @Autowired
+  private ActiveLoanIndex activeLoanIndex;
+
+  @Autowired
+  private AvailabilityEvents availabilityEvents;
+
   @BeforeEach
   public void afterEach() {
-    loanRepository.deleteAll().subscribe(); //filled because of docker init
+    loanRepository.deleteAll().block(); //filled because of docker init
+    activeLoanIndex.reload().block(); // loans were deleted behind the service's back
   }
 
   @Test
@@ -111,6 +129,68 @@ public class BookControllerTest {
         });
   }
 
+  @Test
+  public void expectGetBookWithMatchingETagShouldReturnNotModified() throws Exception {
+    String eTag = webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books/9780132350884")
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(BookDto.class)
+        .getResponseHeaders().getETag();
+    assertThat(eTag).isNotNull();
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books/9780132350884")
+        .ifNoneMatch(eTag)
+        .exchange()
+        .expectStatus().isNotModified()
+        .expectBody().isEmpty();
+
+    // borrowing changes the loan status and therefore the ETag
+    loanService.borrowBook("9780132350884", "demo_user_1").block();
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books/9780132350884")
+        .ifNoneMatch(eTag)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().value(HttpHeaders.ETAG, value -> assertThat(value).isNotEqualTo(eTag));
+  }
+
+  @Test
+  public void expectConcurrentBorrowsOfSameBookShouldLendItOnlyOnce() {
+    var results = Flux.just("demo_user_1", "demo_user_2", "demo_user_3")
+        .flatMap(user -> loanService.borrowBook("9780132350884", user)
+            .map(loan -> "borrowed")
+            .onErrorResume(IllegalStateException.class, e -> Mono.just("conflict")))
+        .collectList()
+        .block();
+
+    assertThat(results).containsOnlyOnce("borrowed");
+    assertThat(results).hasSize(3);
+  }
+
+  @Test
+  public void expectBorrowAndReturnShouldPublishAvailabilityEvents() {
+    StepVerifier.create(availabilityEvents.stream()
+            .filter(e -> e.isbn().equals("9780132350884"))
+            .take(2))
+        .then(() -> {
+          var loan = loanService.borrowBook("9780132350884", "demo_user_1").block();
+          loanService.returnBook(loan.id(), "demo_user_1").block();
+        })
+        .assertNext(e -> assertThat(e.available()).isFalse())
+        .assertNext(e -> assertThat(e.available()).isTrue())
+        .expectComplete()
+        .verify(Duration.ofSeconds(10));
+  }
+
   @Test
   @WithMockUser
   public void expectSearchBooksShouldReturnBooks() throws Exception {
@@ -130,4 +210,266 @@ public class BookControllerTest {
           assertThat(response.content().getFirst().loanStatus().available()).isEqualTo(true);
         });
   }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithCursorShouldReturnFollowingPage() throws Exception {
+
+    var firstPage = webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?size=3&sortBy=title")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .returnResult()
+        .getResponseBody();
+
+    assertThat(firstPage).isNotNull();
+    assertThat(firstPage.nextCursor()).isNotNull();
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri(uriBuilder -> uriBuilder
+            .path("/library/api/books")
+            .queryParam("size", 3)
+            .queryParam("sortBy", "title")
+            .queryParam("after", firstPage.nextCursor())
+            .build())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .value(response -> {
+          assertThat(response.content()).hasSize(3);
+          assertThat(response.content().getFirst().title())
+              .isGreaterThan(firstPage.content().getLast().title());
+          assertThat(response.number()).isZero();
+          assertThat(response.totalElements()).isEqualTo(PageResponseDto.UNKNOWN_TOTAL);
+        });
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithInvalidCursorShouldReturnBadRequest() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?after=invalid")
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksWithIndexCursorOnDatabasePathShouldReturnBadRequest() throws Exception {
+
+    // without a search string the page is served by the database, which orders by the column collation
+    String indexCursor = new PageCursor("index:title", "clean code", 1L).encode();
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri(uriBuilder -> uriBuilder
+            .path("/library/api/books")
+            .queryParam("sortBy", "title")
+            .queryParam("after", indexCursor)
+            .build())
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+  @Test
+  @WithMockUser
+  public void expectSearchBooksByRelevanceShouldReturnMatchingBooks() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?searchString=Clean&sortBy=relevance")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .value(response -> {
+          assertThat(response.content()).isNotEmpty();
+          assertThat(response.content()).allSatisfy(book -> assertThat(book.title()).contains("Clean"));
+          assertThat(response.nextCursor()).isNull();
+        });
+  }
+
+  @Test
+  public void expectSearchBooksWithoutCountShouldReportUnknownTotal() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?page=0&size=2&count=none")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .value(response -> {
+          assertThat(response.content()).hasSize(2);
+          assertThat(response.totalElements()).isEqualTo(PageResponseDto.UNKNOWN_TOTAL);
+          assertThat(response.totalPages()).isEqualTo(PageResponseDto.UNKNOWN_TOTAL);
+          assertThat(response.last()).isFalse();
+        });
+  }
+
+  @Test
+  public void expectSearchBooksWithInvalidCountShouldReturnBadRequest() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?count=invalid")
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+  @Test
+  public void expectStreamBooksShouldReturnAllBooksAsNdjson() throws Exception {
+
+    var books = webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books/stream")
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+        .returnResult(BookDto.class)
+        .getResponseBody()
+        .collectList()
+        .block();
+
+    assertThat(books).hasSizeGreaterThanOrEqualTo(10); // books may have been imported by other tests
+    assertThat(books.getFirst().isbn()).isEqualTo("9780132350884");
+  }
+
+  @Test
+  public void expectBulkImportShouldImportValidRowsAndReportFailures() throws Exception {
+    String body = """
+        {"isbn":"9780000000101","title":"Imported One","author":"Import Author","publishedAt":2020,"publisher":"Import","language":"EN","pages":100}
+        {"isbn":"9780000000102","title":"Imported Two","author":"Import Author","publishedAt":2021,"publisher":"Import","language":"EN","pages":200}
+        {"isbn":"9780000000103","title":"","author":"Import Author","publishedAt":2021,"publisher":"Import","language":"EN","pages":200}
+        {"isbn":"9780132350884","title":"Duplicate","author":"Import Author","publishedAt":2021,"publisher":"Import","language":"EN","pages":200}
+        """;
+
+    webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .post()
+        .uri("/library/api/books/bulk")
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .bodyValue(body)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(BookImportReportDto.class)
+        .value(report -> {
+          assertThat(report.received()).isEqualTo(4);
+          assertThat(report.imported()).isEqualTo(2);
+          assertThat(report.failed()).isEqualTo(2);
+          assertThat(report.errors()).extracting(BookImportErrorDto::line).containsExactly(3L, 4L);
+        });
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books/9780000000102")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(BookDto.class)
+        .value(book -> assertThat(book.title()).isEqualTo("Imported Two"));
+  }
+
+  @Test
+  public void expectBulkImportWithoutRoleLibrarianShouldReturnForbidden() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .post()
+        .uri("/library/api/books/bulk")
+        .contentType(MediaType.parseMediaType("text/csv"))
+        .bodyValue("isbn,title,author,publishedAt,publisher,language,pages\n")
+        .exchange()
+        .expectStatus().isForbidden();
+  }
+
+  @Test
+  public void expectSearchBooksWithFacetFilterShouldReturnOnlyMatchingBooks() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?publisher=Prentice Hall&decade=2000&size=20")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .value(response -> {
+          assertThat(response.content()).isNotEmpty();
+          assertThat(response.content()).allSatisfy(book -> {
+            assertThat(book.publisher()).isEqualTo("Prentice Hall");
+            assertThat(book.publishedAt()).isBetween(2000, 2009);
+          });
+        });
+  }
+
+  @Test
+  public void expectSearchBooksAcceptingSmileShouldReturnSmile() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?page=0&size=2")
+        .accept(MediaType.parseMediaType("application/x-jackson-smile"))
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(MediaType.parseMediaType("application/x-jackson-smile"))
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .value(response -> assertThat(response.content()).hasSize(2));
+  }
+
+  @Test
+  public void expectSearchBooksWithFieldsShouldReturnOnlyRequestedFields() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?page=0&size=2&fields=title,author")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.content[0].isbn").exists()
+        .jsonPath("$.content[0].title").exists()
+        .jsonPath("$.content[0].author").exists()
+        .jsonPath("$.content[0].description").doesNotExist()
+        .jsonPath("$.content[0].loanStatus").doesNotExist();
+  }
+
+  @Test
+  public void expectSearchBooksWithDescriptionFieldShouldReturnDescription() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?page=0&size=2&fields=title,description")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<BookDto>>() {})
+        .value(response -> assertThat(response.content()).allSatisfy(book -> {
+          assertThat(book.description()).isNotNull();
+          assertThat(book.author()).isNull();
+        }));
+  }
+
+  @Test
+  public void expectSearchBooksWithUnknownFieldShouldReturnBadRequest() throws Exception {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/books?fields=title,unknown")
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
 }
@@ -0,0 +1,129 @@
+package org.kergru.library.books.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.paging.PageCursor;
+
+class BookSearchIndexTest {
+
+  private BookSearchIndex index;
+
+  @BeforeEach
+  void setUp() {
+    index = new BookSearchIndex(null, true);
+    index.index(List.of(
+        book(1, "9780132350884", "Clean Code", "Robert C. Martin"),
+        book(2, "9780134494166", "Clean Architecture", "Robert C. Martin"),
+        book(3, "9780134685991", "Effective Java", "Joshua Bloch"),
+        book(4, "9780321349606", "Java Concurrency in Practice", "Brian Goetz"),
+        book(5, "9783000000001", "Café Crème", "Émile Zola")
+    ));
+  }
+
+  @Test
+  void expectSubstringSearchOverAllFieldsShouldReturnMatchesInSortOrder() {
+    assertThat(index.search("clean", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(2L, 1L);
+    assertThat(index.search("MARTIN", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(2L, 1L);
+    assertThat(index.search("0134", "isbn", null, 0, 10, BookFilter.NONE).ids()).containsExactly(2L, 3L);
+  }
+
+  @Test
+  void expectSearchShouldIgnoreCaseAndDiacritics() {
+    assertThat(index.search("cafe creme", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(5L);
+    assertThat(index.search("emile", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(5L);
+  }
+
+  @Test
+  void expectCandidatesWithTrigramsFromDifferentFieldsShouldNotMatch() {
+    index.index(List.of(book(6, "0000000000000", "Abcd", "Bcde")));
+
+    // all trigrams of "abcde" are indexed for book 6, but no single field contains the query
+    assertThat(index.search("abcde", "title", null, 0, 10, BookFilter.NONE).total()).isZero();
+    assertThat(index.search("bcd", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(6L);
+  }
+
+  @Test
+  void expectShortQueryShouldScanAllBooks() {
+    assertThat(index.search("ja", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(3L, 4L);
+  }
+
+  @Test
+  void expectPagingByOffsetAndCursorShouldReturnSamePages() {
+    var firstPage = index.search("a", "title", null, 0, 2, BookFilter.NONE);
+    assertThat(firstPage.total()).isEqualTo(5);
+    assertThat(firstPage.ids()).containsExactly(5L, 2L);
+    assertThat(firstPage.hasNext()).isTrue();
+
+    var byOffset = index.search("a", "title", null, 2, 2, BookFilter.NONE);
+    var byCursor = index.search("a", "title", new PageCursor("title", "Clean Architecture", 2L), 0, 2, BookFilter.NONE);
+    assertThat(byOffset.ids()).containsExactly(1L, 3L);
+    assertThat(byCursor.ids()).isEqualTo(byOffset.ids());
+
+    var lastPage = index.search("a", "title", null, 4, 2, BookFilter.NONE);
+    assertThat(lastPage.ids()).containsExactly(4L);
+    assertThat(lastPage.hasNext()).isFalse();
+  }
+
+  @Test
+  void expectRemovedAndReindexedBooksShouldBeUpdated() {
+    index.remove(1L);
+    index.index(List.of(book(3, "9780134685991", "Effective Kotlin", "Marcin Moskala")));
+
+    assertThat(index.search("clean code", "title", null, 0, 10, BookFilter.NONE).total()).isZero();
+    assertThat(index.search("effective", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(3L);
+    assertThat(index.search("java", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(4L);
+    assertThat(index.size()).isEqualTo(4);
+  }
+
+  @Test
+  void expectRepeatedUpdatesShouldReclaimDeadOrdinals() {
+    for (int i = 0; i < 2_000; i++) {
+      index.index(List.of(book(1, "9780132350884", "Clean Code " + i, "Robert C. Martin")));
+    }
+
+    assertThat(index.ordinals()).isLessThan(1_100);
+    assertThat(index.size()).isEqualTo(5);
+    assertThat(index.search("clean code 1999", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(1L);
+    assertThat(index.search("clean", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(2L, 1L);
+    assertThat(index.search("ja", "title", null, 0, 10, BookFilter.NONE).ids()).containsExactly(3L, 4L);
+  }
+
+  @Test
+  void expectFacetFilterShouldRestrictHitsAndCountOtherFacets() {
+    index.index(List.of(
+        book(1, "9780132350884", "Clean Code", "Robert C. Martin", "EN", "Prentice Hall", 2008),
+        book(2, "9780134494166", "Clean Architecture", "Robert C. Martin", "EN", "Prentice Hall", 2017),
+        book(6, "9783826655487", "Clean Code (Deutsch)", "Robert C. Martin", "DE", "mitp", 2009)
+    ));
+
+    var hits = index.search("clean", "title", null, 0, 10, new BookFilter("EN", null, null));
+    assertThat(hits.total()).isEqualTo(2);
+    assertThat(hits.ids()).containsExactly(2L, 1L);
+    // the language facet ignores its own filter, the other facets apply it
+    assertThat(hits.facets().get(Facets.LANGUAGE)).containsEntry("EN", 2L).containsEntry("DE", 1L);
+    assertThat(hits.facets().get(Facets.PUBLISHER)).containsOnlyKeys("Prentice Hall");
+    assertThat(hits.facets().get(Facets.DECADE)).containsEntry("2000", 1L).containsEntry("2010", 1L);
+  }
+
+  private static BookEntity book(
+      long id, String isbn, String title, String author, String language, String publisher, int publishedAt) {
+    BookEntity book = book(id, isbn, title, author);
+    book.language = language;
+    book.publisher = publisher;
+    book.publishedAt = publishedAt;
+    return book;
+  }
+
+  private static BookEntity book(long id, String isbn, String title, String author) {
+    BookEntity book = new BookEntity();
+    book.id = id;
+    book.isbn = isbn;
+    book.title = title;
+    book.author = author;
+    return book;
+  }
+}
@@ -0,0 +1,92 @@
+package org.kergru.library.books.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanEventProjection;
+import org.kergru.library.model.BookSuggestionDto;
+
+class BookSuggestIndexTest {
+
+  private BookSuggestIndex index;
+
+  private final BookEntity cleanCode = book("Clean Code", "Robert C. Martin");
+
+  private final BookEntity cleanArchitecture = book("Clean Architecture", "Robert C. Martin");
+
+  private final BookEntity designPatterns = book("Design Patterns", "Gamma; Helm; Johnson; Vlissides");
+
+  @BeforeEach
+  void setUp() {
+    index = new BookSuggestIndex(null, null);
+    index.index(List.of(cleanCode, cleanArchitecture, designPatterns, book("Head First Design Patterns", "Eric Freeman")));
+  }
+
+  @Test
+  void expectPrefixShouldMatchEveryWordStartOfTitlesAndAuthors() {
+    assertThat(values(index.suggest("cod", 10))).containsExactly("Clean Code");
+    assertThat(values(index.suggest("MART", 10))).containsExactly("Robert C. Martin");
+    assertThat(values(index.suggest("helm", 10))).containsExactly("Helm");
+    assertThat(values(index.suggest("design p", 10))).containsExactly("Design Patterns", "Head First Design Patterns");
+    assertThat(index.suggest("xyz", 10)).isEmpty();
+    assertThat(index.suggest(" ", 10)).isEmpty();
+  }
+
+  @Test
+  void expectLoansShouldRankSuggestionsByPopularity() {
+    assertThat(values(index.suggest("clean", 10))).containsExactly("Clean Architecture", "Clean Code");
+
+    index.apply(borrowed(cleanCode));
+
+    assertThat(values(index.suggest("clean", 10))).containsExactly("Clean Code", "Clean Architecture");
+    assertThat(values(index.suggest("c", 1))).containsExactly("Clean Code");
+    assertThat(index.suggest("c", 1).getFirst().field()).isEqualTo("title");
+  }
+
+  @Test
+  void expectOnlyTopKSuggestionsPerPrefix() {
+    for (int i = 0; i < 2 * BookSuggestIndex.TOP_K; i++) {
+      BookEntity book = book("Java Volume " + i, "Author " + i);
+      index.index(List.of(book));
+      for (int loans = 0; loans < i; loans++) {
+        index.apply(borrowed(book));
+      }
+    }
+
+    var suggestions = values(index.suggest("java vol", 100));
+    assertThat(suggestions).hasSize(BookSuggestIndex.TOP_K);
+    assertThat(suggestions.getFirst()).isEqualTo("Java Volume " + (2 * BookSuggestIndex.TOP_K - 1));
+  }
+
+  private static List<String> values(List<BookSuggestionDto> suggestions) {
+    return suggestions.stream().map(BookSuggestionDto::value).toList();
+  }
+
+  @Test
+  void expectOtherEventsShouldNotCountAsLoan() {
+    var returned = borrowed(cleanCode);
+    returned.setType(LoanEventEntity.RETURNED);
+    index.apply(returned);
+
+    assertThat(values(index.suggest("clean", 10))).containsExactly("Clean Architecture", "Clean Code");
+  }
+
+  private static LoanEventProjection borrowed(BookEntity book) {
+    var event = new LoanEventProjection();
+    event.setType(LoanEventEntity.BORROWED);
+    event.setTitle(book.title);
+    event.setAuthor(book.author);
+    return event;
+  }
+
+  private static BookEntity book(String title, String author) {
+    BookEntity book = new BookEntity();
+    book.title = title;
+    book.author = author;
+    return book;
+  }
+}
@@ -0,0 +1,161 @@
+package org.kergru.library.loans.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.kergru.library.JwtTestUtils.createMockJwt;
+import static org.kergru.library.JwtTestUtils.createMockJwtWithRoleLibrarian;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.loans.service.LoanService;
+import org.kergru.library.loans.service.OverdueLoanScanner;
+import org.kergru.library.model.LoanChangesDto;
+import org.kergru.library.model.LoanEventDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.containers.MySQLR2DBCDatabaseContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.MountableFile;
+import reactor.test.StepVerifier;
+
+@AutoConfigureWebTestClient
+@Testcontainers
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class LoanControllerTest {
+
+  private static final MySQLContainer<?> mysqlContainer = new MySQLContainer<>("mysql:8.0")
+      .withDatabaseName("library")
+      .withUsername("admin")
+      .withPassword("pwd")
+      .withCopyFileToContainer(
+          MountableFile.forHostPath("../docker/mysql-init/library_schema.sql"),
+          "/docker-entrypoint-initdb.d/library_schema.sql"
+      )
+      .withStartupTimeout(Duration.ofMinutes(2));
+
+  @Container
+  private static final MySQLR2DBCDatabaseContainer r2dbcContainer = new MySQLR2DBCDatabaseContainer(mysqlContainer);
+
+  @DynamicPropertySource
+  static void registerProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.r2dbc.url",
+        () -> "r2dbc:mysql://localhost:" + mysqlContainer.getMappedPort(3306) + "/library");
+    registry.add("spring.r2dbc.username", mysqlContainer::getUsername);
+    registry.add("spring.r2dbc.password", mysqlContainer::getPassword);
+
+    // Hack to force creation of ReactiveJwtDecoder, when mocking JWT with JwtMutator no ReactiveJwtDecoder is created
+    registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri",
+        () -> "http://localhost:8085/realms/library/protocol/openid-connect/certs");
+
+    // the seed loan 1 was borrowed 5 days ago, loans 2 and 4 less than 3 days ago
+    registry.add("library.loans.overdue.loan-period", () -> "P3D");
+  }
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @Autowired
+  private LoanService loanService;
+
+  @Autowired
+  private OverdueLoanScanner overdueLoanScanner;
+
+  @Test
+  void expectChangesShouldReturnBorrowAndReturnAfterOffset() {
+    long start = getChanges(0).nextOffset();
+
+    var loan = loanService.borrowBook("9780134685991", "demo_user_2").block();
+    loanService.returnBook(loan.id(), "demo_user_2").block();
+
+    LoanChangesDto changes = getChanges(start);
+    assertThat(changes.events()).extracting(LoanEventDto::type).containsExactly("BORROWED", "RETURNED");
+    // offsets are taken in commit order without gaps
+    assertThat(changes.events()).extracting(LoanEventDto::offset).containsExactly(start + 1, start + 2);
+    assertThat(changes.events()).allSatisfy(e -> {
+      assertThat(e.loanId()).isEqualTo(loan.id());
+      assertThat(e.userName()).isEqualTo("demo_user_2");
+      assertThat(e.isbn()).isEqualTo("9780134685991");
+    });
+    assertThat(changes.nextOffset()).isEqualTo(changes.events().getLast().offset());
+
+    // resumed from the last offset there is nothing new
+    LoanChangesDto next = getChanges(changes.nextOffset());
+    assertThat(next.events()).isEmpty();
+    assertThat(next.nextOffset()).isEqualTo(changes.nextOffset());
+
+    // following the feed from the same start delivers the same events
+    var followed = webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .get()
+        .uri("/library/api/loans/changes/stream?after={after}", start)
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(LoanEventDto.class)
+        .getResponseBody();
+
+    StepVerifier.create(followed.take(2))
+        .expectNextSequence(changes.events())
+        .expectComplete()
+        .verify(Duration.ofSeconds(10));
+  }
+
+  @Test
+  void expectOverdueScanShouldMarkLoansOnceAndPublishEvents() {
+    long start = getChanges(0).nextOffset();
+
+    assertThat(overdueLoanScanner.scan(Instant.now()).block()).isEqualTo(1L);
+    // already marked loans are skipped
+    assertThat(overdueLoanScanner.scan(Instant.now()).block()).isZero();
+
+    LoanChangesDto changes = getChanges(start);
+    assertThat(changes.events()).singleElement().satisfies(e -> {
+      assertThat(e.type()).isEqualTo("OVERDUE");
+      assertThat(e.loanId()).isEqualTo(1L);
+      assertThat(e.userName()).isEqualTo("demo_user_1");
+      assertThat(e.isbn()).isEqualTo("9780132350884");
+    });
+  }
+
+  @Test
+  void expectChangesWithNotRoleLibrarianShouldReturnForbidden() {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/loans/changes")
+        .exchange()
+        .expectStatus().isForbidden();
+  }
+
+  @Test
+  void expectChangesWithInvalidLimitShouldReturnBadRequest() {
+
+    webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .get()
+        .uri("/library/api/loans/changes?limit=0")
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+  private LoanChangesDto getChanges(long after) {
+    return webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .get()
+        .uri("/library/api/loans/changes?after={after}", after)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(LoanChangesDto.class)
+        .returnResult()
+        .getResponseBody();
+  }
+}
@@ -0,0 +1,74 @@
+package org.kergru.library.loans.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.loans.repository.LoanEntity;
+
+class ActiveLoanIndexTest {
+
+  private ActiveLoanIndex index;
+
+  @BeforeEach
+  void setUp() {
+    index = new ActiveLoanIndex(null, null, Duration.ofMillis(10));
+  }
+
+  @Test
+  void expectPutShouldMakeLoanVisibleByBookId() {
+    Instant borrowedAt = Instant.parse("2025-01-02T10:15:30.123456Z");
+    index.put(loan(7, 1001, 1, borrowedAt));
+
+    var loan = index.get(1001);
+    assertThat(loan).isNotNull();
+    assertThat(loan.loanId()).isEqualTo(7);
+    assertThat(loan.borrowerId()).isEqualTo(1);
+    assertThat(loan.borrowedAt()).isEqualTo(borrowedAt);
+    assertThat(index.get(1002)).isNull();
+  }
+
+  @Test
+  void expectRemoveShouldOnlyRemoveMatchingLoan() {
+    index.put(loan(7, 1001, 1, Instant.now()));
+
+    index.remove(1001, 8);
+    assertThat(index.get(1001)).isNotNull();
+
+    index.remove(1001, 7);
+    assertThat(index.get(1001)).isNull();
+    assertThat(index.size()).isZero();
+  }
+
+  @Test
+  void expectManyLoansShouldSurviveGrowingAndRemoving() {
+    for (long bookId = 1; bookId <= 10_000; bookId++) {
+      index.put(loan(bookId + 100_000, bookId, bookId % 4, Instant.now()));
+    }
+    for (long bookId = 1; bookId <= 10_000; bookId += 2) {
+      index.remove(bookId, bookId + 100_000);
+    }
+
+    assertThat(index.size()).isEqualTo(5_000);
+    for (long bookId = 1; bookId <= 10_000; bookId++) {
+      var loan = index.get(bookId);
+      if (bookId % 2 == 0) {
+        assertThat(loan).isNotNull();
+        assertThat(loan.loanId()).isEqualTo(bookId + 100_000);
+      } else {
+        assertThat(loan).isNull();
+      }
+    }
+  }
+
+  private static LoanEntity loan(long id, long bookId, long userId, Instant borrowedAt) {
+    var loan = new LoanEntity();
+    loan.id = id;
+    loan.bookId = bookId;
+    loan.userId = userId;
+    loan.borrowedAt = borrowedAt;
+    return loan;
+  }
+}
@@ -0,0 +1,50 @@
+package org.kergru.library.loans.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class BorrowLocksTest {
+
+  private final BorrowLocks locks = new BorrowLocks();
+
+  @Test
+  void expectSecondBorrowOfSameBookShouldFailWhileFirstIsInFlight() {
+    Sinks.One<String> first = Sinks.one();
+
+    StepVerifier.create(locks.withLock(1001, first.asMono()))
+        .then(() -> {
+          StepVerifier.create(locks.withLock(1001, Mono.just("second")))
+              .expectError(IllegalStateException.class)
+              .verify();
+          // other books are not affected
+          StepVerifier.create(locks.withLock(1002, Mono.just("other")))
+              .expectNext("other")
+              .verifyComplete();
+          first.tryEmitValue("first");
+        })
+        .expectNext("first")
+        .verifyComplete();
+
+    assertThat(locks.size()).isZero();
+    StepVerifier.create(locks.withLock(1001, Mono.just("again")))
+        .expectNext("again")
+        .verifyComplete();
+  }
+
+  @Test
+  void expectLockShouldBeReleasedOnErrorAndCancel() {
+    StepVerifier.create(locks.withLock(1001, Mono.error(new IllegalStateException("Book is already borrowed"))))
+        .expectError(IllegalStateException.class)
+        .verify();
+    assertThat(locks.size()).isZero();
+
+    StepVerifier.create(locks.withLock(1001, Mono.never()))
+        .thenCancel()
+        .verify();
+    assertThat(locks.size()).isZero();
+  }
+}
@@ -0,0 +1,23 @@
+package org.kergru.library.loans.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.r2dbc.spi.R2dbcException;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+class LoanServiceTest {
+
+  @Test
+  void expectDeadlockShouldBeDetectedByErrorCodeOrMessage() {
+    var byCode = new R2dbcException("rolled back", "40001", 1213) {
+    };
+    assertThat(LoanService.isDeadlock(new DataAccessResourceFailureException("failed", byCode))).isTrue();
+    assertThat(LoanService.isDeadlock(
+        new RuntimeException("Deadlock found when trying to get lock; try restarting transaction"))).isTrue();
+
+    var duplicate = new R2dbcException("Duplicate entry", "23000", 1062) {
+    };
+    assertThat(LoanService.isDeadlock(duplicate)).isFalse();
+  }
+}
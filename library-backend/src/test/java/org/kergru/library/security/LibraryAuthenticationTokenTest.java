@@ -0,0 +1,58 @@
+package org.kergru.library.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class LibraryAuthenticationTokenTest {
+
+  private final AtomicInteger lookups = new AtomicInteger();
+
+  private final Function<String, Mono<Long>> lookup = userName -> Mono.fromSupplier(() -> {
+    lookups.incrementAndGet();
+    return 7L;
+  });
+
+  @Test
+  void expectUserIdClaimShouldBeUsedWithoutLookup() {
+    var token = new LibraryAuthenticationToken(jwt(42), List.of(), "library_user_id", lookup);
+
+    StepVerifier.create(token.getUserId()).expectNext(42L).verifyComplete();
+    assertThat(token.getUserName()).isEqualTo("demo_user_1");
+    assertThat(lookups).hasValue(0);
+  }
+
+  @Test
+  void expectMissingClaimShouldBeLookedUpOnce() {
+    var token = new LibraryAuthenticationToken(jwt(null), List.of(), "library_user_id", lookup);
+
+    StepVerifier.create(token.getUserId()).expectNext(7L).verifyComplete();
+    StepVerifier.create(token.getUserId()).expectNext(7L).verifyComplete();
+    assertThat(lookups).hasValue(1);
+  }
+
+  @Test
+  void expectLookupModeShouldIgnoreClaim() {
+    var token = new LibraryAuthenticationToken(jwt(42), List.of(), null, lookup);
+
+    StepVerifier.create(token.getUserId()).expectNext(7L).verifyComplete();
+    assertThat(lookups).hasValue(1);
+  }
+
+  private static Jwt jwt(Integer userId) {
+    var builder = Jwt.withTokenValue("token")
+        .header("alg", "RS256")
+        .claim("sub", "demo_user_1")
+        .claim("preferred_username", "demo_user_1");
+    if (userId != null) {
+      builder.claim("library_user_id", userId);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,133 @@
+package org.kergru.library.stats.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.books.repository.BookEntity;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanEventProjection;
+import org.kergru.library.model.LoanStatsDto.BookBorrowCountDto;
+import org.kergru.library.model.LoanStatsDto.UserLoanCountDto;
+import org.kergru.library.users.repository.UserEntity;
+
+class LoanStatisticsTest {
+
+  private static final LocalDate TODAY = LocalDate.of(2025, 3, 10);
+
+  private final LoanStatistics statistics = new LoanStatistics(null, null, 2, 3);
+
+  @Test
+  void expectBorrowsAndReturnsShouldUpdateTopBooksAndUsers() {
+    BookEntity cleanCode = book(1001, "9780132350884", "Clean Code");
+    BookEntity effectiveJava = book(1002, "9780134685991", "Effective Java");
+    BookEntity refactoring = book(1004, "9780134757599", "Refactoring");
+    UserEntity alice = user(1, "alice");
+    UserEntity bob = user(2, "bob");
+
+    statistics.apply(borrowed(cleanCode, alice, at(TODAY)));
+    statistics.apply(borrowed(effectiveJava, alice, at(TODAY)));
+    statistics.apply(borrowed(effectiveJava, bob, at(TODAY)));
+    statistics.apply(borrowed(refactoring, bob, at(TODAY)));
+    statistics.apply(borrowed(effectiveJava, bob, at(TODAY)));
+    statistics.apply(returned(alice));
+    statistics.apply(returned(alice));
+
+    var stats = statistics.stats(TODAY.toEpochDay());
+    assertThat(stats.activeLoans()).isEqualTo(3);
+    assertThat(stats.mostBorrowedBooks()).containsExactly(
+        new BookBorrowCountDto("9780134685991", "Effective Java", 3),
+        new BookBorrowCountDto("9780132350884", "Clean Code", 1));
+    // alice returned all loans and is no longer listed
+    assertThat(stats.mostActiveBorrowers()).containsExactly(new UserLoanCountDto("bob", 3));
+  }
+
+  @Test
+  void expectDailyBorrowsShouldCoverLastDaysOnly() {
+    UserEntity alice = user(1, "alice");
+    statistics.apply(borrowed(book(1001, "9780132350884", "Clean Code"), alice, at(TODAY.minusDays(3))));
+    statistics.apply(borrowed(book(1002, "9780134685991", "Effective Java"), alice, at(TODAY.minusDays(1))));
+    statistics.apply(borrowed(book(1003, "9780201633610", "Design Patterns"), alice, at(TODAY)));
+    statistics.apply(borrowed(book(1004, "9780134757599", "Refactoring"), alice, at(TODAY)));
+
+    var daily = statistics.stats(TODAY.toEpochDay()).dailyBorrows();
+    assertThat(daily).hasSize(3);
+    assertThat(daily.get(0).day()).isEqualTo(TODAY.minusDays(2));
+    assertThat(daily.get(0).borrowCount()).isZero();
+    assertThat(daily.get(1).borrowCount()).isEqualTo(1);
+    assertThat(daily.get(2).borrowCount()).isEqualTo(2);
+  }
+
+  @Test
+  void expectReturnWithoutCountedLoanShouldNotMakeCountsNegative() {
+    UserEntity alice = user(1, "alice");
+    statistics.apply(borrowed(book(1001, "9780132350884", "Clean Code"), alice, at(TODAY)));
+    statistics.apply(returned(alice));
+    statistics.apply(returned(alice));
+
+    var stats = statistics.stats(TODAY.toEpochDay());
+    assertThat(stats.activeLoans()).isZero();
+    assertThat(stats.mostActiveBorrowers()).isEmpty();
+  }
+
+  @Test
+  void expectStatsShouldFailUntilLoaded() {
+    assertThatThrownBy(statistics::stats).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void expectOverdueEventShouldNotChangeCounts() {
+    UserEntity alice = user(1, "alice");
+    statistics.apply(borrowed(book(1001, "9780132350884", "Clean Code"), alice, at(TODAY)));
+    var overdue = returned(alice);
+    overdue.setType(LoanEventEntity.OVERDUE);
+    statistics.apply(overdue);
+
+    var stats = statistics.stats(TODAY.toEpochDay());
+    assertThat(stats.activeLoans()).isEqualTo(1);
+    assertThat(stats.mostActiveBorrowers()).containsExactly(new UserLoanCountDto("alice", 1));
+  }
+
+  private static LoanEventProjection borrowed(BookEntity book, UserEntity user, Instant at) {
+    var event = event(LoanEventEntity.BORROWED, user, at);
+    event.setBookId(book.id);
+    event.setIsbn(book.isbn);
+    event.setTitle(book.title);
+    return event;
+  }
+
+  private static LoanEventProjection returned(UserEntity user) {
+    return event(LoanEventEntity.RETURNED, user, Instant.now());
+  }
+
+  private static LoanEventProjection event(String type, UserEntity user, Instant at) {
+    var event = new LoanEventProjection();
+    event.setType(type);
+    event.setUserId(user.id);
+    event.setUsername(user.username);
+    event.setOccurredAt(at);
+    return event;
+  }
+
+  private static Instant at(LocalDate day) {
+    return day.atTime(12, 0).toInstant(ZoneOffset.UTC);
+  }
+
+  private static BookEntity book(long id, String isbn, String title) {
+    var book = new BookEntity();
+    book.id = id;
+    book.isbn = isbn;
+    book.title = title;
+    return book;
+  }
+
+  private static UserEntity user(long id, String username) {
+    var user = new UserEntity();
+    user.id = id;
+    user.username = username;
+    return user;
+  }
+}
@@ -5,7 +5,16 @@ import static org.kergru.library.JwtTestUtils.createMockJwt;
 import static org.kergru.library.JwtTestUtils.createMockJwtWithRoleLibrarian;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import org.junit.jupiter.api.Test;
+import org.kergru.library.loans.repository.LoanEventEntity;
+import org.kergru.library.loans.repository.LoanEventRepository;
+import org.kergru.library.loans.service.AvailabilityEvents;
+import org.kergru.library.loans.service.LoanArchiver;
+import org.kergru.library.loans.service.LoanService;
+import org.kergru.library.model.LoanBatchItemDto;
+import org.kergru.library.model.LoanDto;
 import org.kergru.library.model.PageResponseDto;
 import org.kergru.library.model.UserDto;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +30,7 @@ import org.testcontainers.containers.MySQLR2DBCDatabaseContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.MountableFile;
+import reactor.test.StepVerifier;
 
 @AutoConfigureWebTestClient
 @Testcontainers
@@ -55,6 +65,18 @@ public class UserControllerTest {
   @Autowired
   private WebTestClient webTestClient;
 
+  @Autowired
+  private LoanService loanService;
+
+  @Autowired
+  private LoanArchiver loanArchiver;
+
+  @Autowired
+  private AvailabilityEvents availabilityEvents;
+
+  @Autowired
+  private LoanEventRepository loanEventRepository;
+
   @Test
   void expectGetUserWithRoleLibrarianShouldReturnUser() {
 
@@ -136,4 +158,206 @@ public class UserControllerTest {
         .exchange()
         .expectStatus().isForbidden();
   }
+
+  @Test
+  void expectBatchBorrowAndReturnWithRoleLibrarianShouldReportOutcomePerItem() {
+
+    var borrowed = webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .post()
+        .uri("/library/api/users/demo_user_2/loans/batch")
+        .bodyValue(List.of("9780134757599", "9780201633610", "0000000000000"))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(LoanBatchItemDto.class)
+        .returnResult()
+        .getResponseBody();
+
+    assertThat(borrowed).hasSize(3);
+    assertThat(borrowed.get(0).loanId()).isNotNull();
+    assertThat(borrowed.get(0).error()).isNull();
+    assertThat(borrowed.get(1).error()).isEqualTo("Book is already borrowed");
+    assertThat(borrowed.get(2).error()).isEqualTo("Book not found");
+
+    webTestClient
+        .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+        .post()
+        .uri("/library/api/users/demo_user_2/loans/batch-return")
+        .bodyValue(List.of(borrowed.get(0).loanId(), 999_999L))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(LoanBatchItemDto.class)
+        .value(returned -> {
+          assertThat(returned).hasSize(2);
+          assertThat(returned.get(0).loanId()).isEqualTo(borrowed.get(0).loanId());
+          assertThat(returned.get(0).error()).isNull();
+          assertThat(returned.get(1).error()).isEqualTo("Loan not found");
+        });
+  }
+
+  @Test
+  void expectBatchReturnOfForeignUserWithNotRoleLibrarianShouldReturnForbidden() {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .post()
+        .uri("/library/api/users/demo_user_2/loans/batch-return")
+        .bodyValue(List.of(2L))
+        .exchange()
+        .expectStatus().isForbidden();
+  }
+
+  @Test
+  void expectArchivedLoansShouldStillBeListedForUser() {
+    var loan = loanService.borrowBook("9780134685991", "demo_user_3").block();
+    assertThat(loan).isNotNull();
+    loanService.returnBook(loan.id(), "demo_user_3").block();
+
+    assertThat(loanArchiver.archive(Instant.now()).block()).isGreaterThanOrEqualTo(1L);
+
+    // a retried return of the archived loan is still a no-op
+    returnLoan("demo_user_3", loan.id());
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_3"))
+        .get()
+        .uri("/library/api/users/demo_user_3/loans")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<LoanDto>>() {})
+        .value(page -> assertThat(page.content())
+            .anySatisfy(l -> {
+              assertThat(l.id()).isEqualTo(loan.id());
+              assertThat(l.returnedAt()).isNotNull();
+            })
+            .anySatisfy(l -> assertThat(l.returnedAt()).isNull()));
+  }
+
+  @Test
+  void expectLoansWithStatusAndCursorShouldReturnFilteredPages() {
+    var loan = loanService.borrowBook("9780135957059", "demo_user_1").block();
+    assertThat(loan).isNotNull();
+
+    var firstPage = webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/users/demo_user_1/loans?status=active&size=1")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<LoanDto>>() {})
+        .returnResult()
+        .getResponseBody();
+
+    assertThat(firstPage).isNotNull();
+    assertThat(firstPage.content()).hasSize(1);
+    assertThat(firstPage.content().getFirst().id()).isEqualTo(loan.id()); // newest first
+    assertThat(firstPage.nextCursor()).isNotNull();
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/users/demo_user_1/loans?status=active&size=1&after=" + firstPage.nextCursor())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(new ParameterizedTypeReference<PageResponseDto<LoanDto>>() {})
+        .value(page -> {
+          assertThat(page.content()).hasSize(1);
+          assertThat(page.content().getFirst().id()).isNotEqualTo(loan.id());
+          assertThat(page.content().getFirst().returnedAt()).isNull();
+        });
+  }
+
+  @Test
+  void expectBorrowRetriedWithSameIdempotencyKeyShouldReplayOriginalResponse() {
+
+    LoanDto first = borrowWithIdempotencyKey("9780134494166", "key-1");
+    LoanDto retried = borrowWithIdempotencyKey("9780134494166", "key-1");
+    assertThat(retried).isEqualTo(first);
+
+    // a new request for the borrowed book is rejected
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_2"))
+        .post()
+        .uri("/library/api/users/demo_user_2/loans")
+        .header("Idempotency-Key", "key-2")
+        .bodyValue("9780134494166")
+        .exchange()
+        .expectStatus().isEqualTo(409);
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_2"))
+        .delete()
+        .uri("/library/api/users/demo_user_2/loans/{loanId}", first.id())
+        .exchange()
+        .expectStatus().isOk();
+  }
+
+  @Test
+  void expectReturningLoanTwiceShouldHaveNoFurtherEffect() {
+    var loan = loanService.borrowBook("9780321349606", "demo_user_1").block();
+    assertThat(loan).isNotNull();
+
+    returnLoan("demo_user_1", loan.id());
+
+    // no second event, the book is not published as available again
+    StepVerifier.create(availabilityEvents.stream())
+        .expectSubscription()
+        .then(() -> returnLoan("demo_user_1", loan.id()))
+        .expectNoEvent(Duration.ofMillis(500))
+        .thenCancel()
+        .verify();
+
+    assertThat(loanEventRepository.findAll()
+        .filter(e -> e.loanId.equals(loan.id()) && e.type.equals(LoanEventEntity.RETURNED))
+        .count()
+        .block()).isEqualTo(1L);
+  }
+
+  @Test
+  void expectLoansOfUnknownUserWithRoleLibrarianShouldReturnNotFound() {
+
+    // the second request is answered from the negative entry of the user id cache
+    for (int i = 0; i < 2; i++) {
+      webTestClient
+          .mutateWith(createMockJwtWithRoleLibrarian("librarian"))
+          .get()
+          .uri("/library/api/users/unknown_user/loans")
+          .exchange()
+          .expectStatus().isNotFound();
+    }
+  }
+
+  @Test
+  void expectLoansWithInvalidStatusShouldReturnBadRequest() {
+
+    webTestClient
+        .mutateWith(createMockJwt("demo_user_1"))
+        .get()
+        .uri("/library/api/users/demo_user_1/loans?status=lost")
+        .exchange()
+        .expectStatus().isBadRequest();
+  }
+
+  private void returnLoan(String userName, long loanId) {
+    webTestClient
+        .mutateWith(createMockJwt(userName))
+        .delete()
+        .uri("/library/api/users/{userName}/loans/{loanId}", userName, loanId)
+        .exchange()
+        .expectStatus().isOk();
+  }
+
+  private LoanDto borrowWithIdempotencyKey(String isbn, String idempotencyKey) {
+    return webTestClient
+        .mutateWith(createMockJwt("demo_user_2"))
+        .post()
+        .uri("/library/api/users/demo_user_2/loans")
+        .header("Idempotency-Key", idempotencyKey)
+        .bodyValue(isbn)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(LoanDto.class)
+        .returnResult()
+        .getResponseBody();
+  }
 }
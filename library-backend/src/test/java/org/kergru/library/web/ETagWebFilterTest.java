@@ -0,0 +1,69 @@
+package org.kergru.library.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+class ETagWebFilterTest {
+
+  private static final String BODY = "{\"isbn\":\"9780132350884\",\"title\":\"Clean Code\"}";
+
+  private final ETagWebFilter filter = new ETagWebFilter();
+
+  @Test
+  void expectTaggedResponseShouldCarryHashOfWrittenBody() {
+    var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/library/api/books/9780132350884"));
+    filter.filter(exchange, writing(BODY, true)).block();
+
+    String tag = exchange.getResponse().getHeaders().getETag();
+    assertThat(tag).hasSize(66).startsWith("\"");
+    assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+
+    var other = MockServerWebExchange.from(MockServerHttpRequest.get("/library/api/books/9780132350884"));
+    filter.filter(other, writing(BODY.replace("Clean Code", "Clean Coder"), true)).block();
+    assertThat(other.getResponse().getHeaders().getETag()).isNotEqualTo(tag);
+  }
+
+  @Test
+  void expectMatchingIfNoneMatchShouldReturnNotModifiedWithoutBody() {
+    var first = MockServerWebExchange.from(MockServerHttpRequest.get("/library/api/books/9780132350884"));
+    filter.filter(first, writing(BODY, true)).block();
+    String tag = first.getResponse().getHeaders().getETag();
+
+    var second = MockServerWebExchange.from(MockServerHttpRequest.get("/library/api/books/9780132350884")
+        .ifNoneMatch("W/" + tag));
+    filter.filter(second, writing(BODY, true)).block();
+
+    assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(second.getResponse().getHeaders().getETag()).isEqualTo(tag);
+    assertThat(second.getResponse().getBody().count().block()).isZero();
+  }
+
+  @Test
+  void expectUnmarkedResponseShouldNotBeTagged() {
+    var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/library/api/stats"));
+    filter.filter(exchange, writing(BODY, false)).block();
+
+    assertThat(exchange.getResponse().getHeaders().getETag()).isNull();
+    assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(BODY);
+  }
+
+  private static WebFilterChain writing(String body, boolean viaETags) {
+    return exchange -> {
+      exchange.getResponse().setStatusCode(HttpStatus.OK);
+      if (viaETags) {
+        exchange.getResponse().getHeaders().set(HttpHeaders.CACHE_CONTROL, ETags.CACHE_CONTROL);
+      }
+      return exchange.getResponse().writeWith(Mono.just(
+          DefaultDataBufferFactory.sharedInstance.wrap(body.getBytes(StandardCharsets.UTF_8))));
+    };
+  }
+}
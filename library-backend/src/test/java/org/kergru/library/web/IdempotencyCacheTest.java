@@ -0,0 +1,50 @@
+package org.kergru.library.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class IdempotencyCacheTest {
+
+  private final IdempotencyCache cache = new IdempotencyCache(new SimpleMeterRegistry(), Duration.ofMinutes(1), 100);
+
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @Test
+  void expectActionShouldOnlyRunWhenSubscribed() {
+    Mono<String> borrow = cache.execute("key-1", "alice|borrow|1", action(Mono.just("loan")));
+
+    assertThat(runs).hasValue(0);
+    StepVerifier.create(borrow).expectNext("loan").verifyComplete();
+    assertThat(runs).hasValue(1);
+  }
+
+  @Test
+  void expectRetryAfterCancelledRequestShouldGetOriginalOutcome() {
+    Sinks.One<String> result = Sinks.one();
+
+    StepVerifier.create(cache.execute("key-1", "alice|borrow|1", action(result.asMono())))
+        .expectSubscription()
+        .thenCancel()
+        .verify();
+    result.tryEmitValue("loan");
+
+    StepVerifier.create(cache.execute("key-1", "alice|borrow|1", action(Mono.just("second"))))
+        .expectNext("loan")
+        .verifyComplete();
+    assertThat(runs).hasValue(1);
+  }
+
+  private Mono<String> action(Mono<String> result) {
+    return Mono.defer(() -> {
+      runs.incrementAndGet();
+      return result;
+    });
+  }
+}
@@ -0,0 +1,92 @@
+package org.kergru.library.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.kergru.library.model.BookDto;
+import org.kergru.library.model.LoanStatusDto;
+import org.kergru.library.model.PageResponseDto;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Compares payload size and encode/decode time of JSON and Smile for typical book pages.
+ * The mappers are built like the ones of the WebFlux codecs. Timings are printed only, the sizes are asserted.
+ */
+class WireFormatBenchmarkTest {
+
+  private static final TypeReference<PageResponseDto<BookDto>> PAGE_TYPE = new TypeReference<>() {};
+
+  private static final int WARMUP = 2_000;
+
+  private static final int ITERATIONS = 5_000;
+
+  private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+
+  private final ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().build();
+
+  @Test
+  void expectSmileShouldBeSmallerThanJsonForTypicalPages() throws Exception {
+    for (int size : List.of(10, 100)) {
+      PageResponseDto<BookDto> page = page(size);
+
+      byte[] jsonBytes = json.writeValueAsBytes(page);
+      byte[] smileBytes = smile.writeValueAsBytes(page);
+
+      assertThat(smile.readValue(smileBytes, PAGE_TYPE)).isEqualTo(json.readValue(jsonBytes, PAGE_TYPE));
+      assertThat(smileBytes.length).isLessThan(jsonBytes.length);
+
+      System.out.printf("page of %3d books: json %6d bytes, encode %6.1f us, decode %6.1f us%n",
+          size, jsonBytes.length, encodeMicros(json, page), decodeMicros(json, jsonBytes));
+      System.out.printf("page of %3d books: smile %5d bytes, encode %6.1f us, decode %6.1f us%n",
+          size, smileBytes.length, encodeMicros(smile, page), decodeMicros(smile, smileBytes));
+    }
+  }
+
+  private static double encodeMicros(ObjectMapper mapper, PageResponseDto<BookDto> page) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      mapper.writeValueAsBytes(page);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      mapper.writeValueAsBytes(page);
+    }
+    return (System.nanoTime() - start) / 1_000.0 / ITERATIONS;
+  }
+
+  private static double decodeMicros(ObjectMapper mapper, byte[] bytes) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      mapper.readValue(bytes, PAGE_TYPE);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      mapper.readValue(bytes, PAGE_TYPE);
+    }
+    return (System.nanoTime() - start) / 1_000.0 / ITERATIONS;
+  }
+
+  private static PageResponseDto<BookDto> page(int size) {
+    List<BookDto> books = IntStream.range(0, size)
+        .mapToObj(i -> new BookDto(
+            String.valueOf(9780132350884L + i),
+            "Clean Code: A Handbook of Agile Software Craftsmanship, Vol. " + i,
+            "Robert C. Martin",
+            1990 + i % 30,
+            "Prentice Hall",
+            "EN",
+            300 + i,
+            "Even bad code can function. But if code isn't clean, it can bring a development organization to its knees. "
+                + "Every year, countless hours and significant resources are lost because of poorly written code.",
+            i % 3 == 0
+                ? new LoanStatusDto(false, (long) i, Instant.parse("2025-01-01T10:00:00Z"))
+                : new LoanStatusDto(true, null, null)))
+        .toList();
+    return new PageResponseDto<>(
+        books, 0, size, 50, 50L * size, true, false, size, false, "dGl0bGU", Map.of("language", Map.of("EN", 50L * size)));
+  }
+}
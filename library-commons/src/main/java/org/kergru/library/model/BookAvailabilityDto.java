@@ -0,0 +1,14 @@
+package org.kergru.library.model;
+
+import java.time.Instant;
+
+/**
+ * Change of the availability of a book, pushed when it is borrowed or returned.
+ */
+public record BookAvailabilityDto(
+    String isbn,
+    boolean available,
+    Instant changedAt
+) {
+
+}
@@ -1,5 +1,11 @@
 package org.kergru.library.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Book with its loan status. Fields not requested by a sparse fieldset are null and omitted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record BookDto(
     String isbn,
     String title,
@@ -0,0 +1,12 @@
+package org.kergru.library.model;
+
+/**
+ * A row of a bulk book import that was not imported, {@code line} is the 1-based line number in the request body.
+ */
+public record BookImportErrorDto(
+    long line,
+    String isbn,
+    String message
+) {
+
+}
@@ -0,0 +1,16 @@
+package org.kergru.library.model;
+
+import java.util.List;
+
+/**
+ * Result of a bulk book import: number of received, imported and failed rows. {@code errors} lists the failures
+ * ordered by line but is capped, {@code failed} counts all of them.
+ */
+public record BookImportReportDto(
+    long received,
+    long imported,
+    long failed,
+    List<BookImportErrorDto> errors
+) {
+
+}
@@ -0,0 +1,11 @@
+package org.kergru.library.model;
+
+/**
+ * Typeahead suggestion for the book search, {@code field} is "title" or "author".
+ */
+public record BookSuggestionDto(
+    String value,
+    String field
+) {
+
+}
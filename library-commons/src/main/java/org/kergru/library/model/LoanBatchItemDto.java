@@ -0,0 +1,13 @@
+package org.kergru.library.model;
+
+/**
+ * Outcome of one item of a batch borrow or return. {@code item} is the requested ISBN or loan id, {@code loanId} the
+ * created or returned loan. {@code error} is null if the item succeeded.
+ */
+public record LoanBatchItemDto(
+    String item,
+    Long loanId,
+    String error
+) {
+
+}
@@ -0,0 +1,14 @@
+package org.kergru.library.model;
+
+import java.util.List;
+
+/**
+ * Batch of the loan change feed. The next batch is requested with {@code after=nextOffset}, which equals the
+ * requested offset if there are no new events.
+ */
+public record LoanChangesDto(
+    List<LoanEventDto> events,
+    long nextOffset
+) {
+
+}
@@ -0,0 +1,18 @@
+package org.kergru.library.model;
+
+import java.time.Instant;
+
+/**
+ * Borrow, return or detected overdue loan in the loan change feed. {@code type} is BORROWED, RETURNED or OVERDUE,
+ * {@code offset} the position in the feed.
+ */
+public record LoanEventDto(
+    long offset,
+    String type,
+    Long loanId,
+    String userName,
+    String isbn,
+    Instant occurredAt
+) {
+
+}
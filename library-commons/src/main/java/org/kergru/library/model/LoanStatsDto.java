@@ -0,0 +1,28 @@
+package org.kergru.library.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Loan statistics for librarians. {@code mostBorrowedBooks} counts all loans including returned ones,
+ * {@code mostActiveBorrowers} the active loans per user. {@code dailyBorrows} covers the last days, oldest first.
+ */
+public record LoanStatsDto(
+    long activeLoans,
+    List<BookBorrowCountDto> mostBorrowedBooks,
+    List<UserLoanCountDto> mostActiveBorrowers,
+    List<DailyBorrowCountDto> dailyBorrows
+) {
+
+  public record BookBorrowCountDto(String isbn, String title, long borrowCount) {
+
+  }
+
+  public record UserLoanCountDto(String userName, long activeLoans) {
+
+  }
+
+  public record DailyBorrowCountDto(LocalDate day, long borrowCount) {
+
+  }
+}
@@ -3,7 +3,14 @@ package org.kergru.library.model;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Page of a search result.
+ * {@code nextCursor} is an opaque keyset cursor for the following page, {@code null} if there is none.
+ * If the total was not counted, {@code totalElements} and {@code totalPages} are {@link #UNKNOWN_TOTAL}.
+ * {@code facets} maps facet name -> value -> count, {@code null} if the search has no facets.
+ */
 public record PageResponseDto<T>(
     List<T> content,
     int number,
@@ -13,8 +20,13 @@ public record PageResponseDto<T>(
     boolean first,
     boolean last,
     int numberOfElements,
-    boolean empty
+    boolean empty,
+    String nextCursor,
+    Map<String, Map<String, Long>> facets
 ) {
+
+  public static final int UNKNOWN_TOTAL = -1;
+
   @JsonCreator
   public PageResponseDto(
       @JsonProperty("content") List<T> content,
@@ -25,7 +37,9 @@ public record PageResponseDto<T>(
       @JsonProperty("first") boolean first,
       @JsonProperty("last") boolean last,
       @JsonProperty("numberOfElements") int numberOfElements,
-      @JsonProperty("empty") boolean empty
+      @JsonProperty("empty") boolean empty,
+      @JsonProperty("nextCursor") String nextCursor,
+      @JsonProperty("facets") Map<String, Map<String, Long>> facets
   ) {
     this.content = content;
     this.number = number;
@@ -36,5 +50,7 @@ public record PageResponseDto<T>(
     this.last = last;
     this.numberOfElements = numberOfElements;
     this.empty = empty;
+    this.nextCursor = nextCursor;
+    this.facets = facets;
   }
 }
@@ -0,0 +1,84 @@
+package org.kergru.library.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Validator cache for GET requests to the backend.
+ * Responses with an ETag are kept in memory, the next request for the same URL is sent with {@code If-None-Match}.
+ * If the backend answers 304, the cached body is returned instead, so unchanged books are neither serialized nor
+ * transferred again.
+ * Entries are kept per access token and Accept header, because the backend's responses depend on the user and the
+ * negotiated format.
+ *
+ * @see OAuth2WebClientConfig
+ */
+@Component
+public class ETagCachingExchangeFilterFunction implements ExchangeFilterFunction {
+
+  private final Cache<String, CachedResponse> cache;
+
+  public ETagCachingExchangeFilterFunction(@Value("${library.backend.etag-cache.max-size:1000}") long maxSize) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .build();
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    if (!HttpMethod.GET.equals(request.method())) {
+      return next.exchange(request);
+    }
+
+    String key = request.url()
+        + "|" + request.headers().getFirst(HttpHeaders.ACCEPT)
+        + "|" + request.headers().getFirst(HttpHeaders.AUTHORIZATION);
+    CachedResponse cached = cache.getIfPresent(key);
+    ClientRequest conditional = cached == null
+        ? request
+        : ClientRequest.from(request).headers(h -> h.setIfNoneMatch(cached.eTag())).build();
+
+    return next.exchange(conditional).flatMap(response -> {
+      if (cached != null && response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+        return response.releaseBody().thenReturn(
+            ClientResponse.create(HttpStatus.OK, response.strategies())
+                .headers(h -> h.addAll(cached.headers()))
+                .body(bytes(cached.body()))
+                .build());
+      }
+
+      String eTag = response.headers().asHttpHeaders().getETag();
+      if (!response.statusCode().is2xxSuccessful() || eTag == null) {
+        return Mono.just(response);
+      }
+      // kept as bytes, the body may be binary (Smile)
+      return response.bodyToMono(byte[].class)
+          .defaultIfEmpty(new byte[0])
+          .map(body -> {
+            cache.put(key, new CachedResponse(eTag, response.headers().asHttpHeaders(), body));
+            return response.mutate().body(bytes(body)).build();
+          });
+    });
+  }
+
+  private static Flux<DataBuffer> bytes(byte[] body) {
+    return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body));
+  }
+
+  private record CachedResponse(String eTag, HttpHeaders headers, byte[] body) {
+
+  }
+}
@@ -2,17 +2,24 @@ package org.kergru.library.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.UUID;
+import org.kergru.library.model.BookAvailabilityDto;
 import org.kergru.library.model.BookDto;
 import org.kergru.library.model.LoanDto;
 import org.kergru.library.model.PageResponseDto;
 import org.kergru.library.model.UserDto;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 /**
  * OAuth2 protected client for the library backend.
@@ -25,6 +32,19 @@ import reactor.core.publisher.Mono;
 @Service
 public class LibraryBackendClient {
 
+  // sparse fieldsets of the list views, the backend then skips the book description
+  private static final String BOOK_LIST_FIELDS = "isbn,title,author,publishedAt,language,loanStatus";
+
+  private static final String LOAN_LIST_FIELDS = "isbn,title,author";
+
+  private static final int LOAN_PAGE_SIZE = 20;
+
+  public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+  // only requests that did not get a response, the backend replays the outcome by idempotency key
+  private static final Retry IDEMPOTENT_RETRY = Retry.backoff(2, Duration.ofMillis(200))
+      .filter(WebClientRequestException.class::isInstance);
+
   private final WebClient webClient;
 
   public LibraryBackendClient(WebClient oauth2WebClient) {
@@ -41,7 +61,8 @@ public class LibraryBackendClient {
               .path("/library/api/books")
               .queryParam("page", page)
               .queryParam("size", size)
-              .queryParam("sort", sortBy);
+              .queryParam("sort", sortBy)
+              .queryParam("fields", BOOK_LIST_FIELDS);
           if (searchString != null && !searchString.isEmpty()) {
             builder.queryParam("searchString", searchString);
           }
@@ -68,6 +89,20 @@ public class LibraryBackendClient {
         .bodyToMono(BookDto.class);
   }
 
+  /**
+   * Subscribes to the availability changes of the books. The events, including the backend's keep-alive comments,
+   * are passed through unchanged.
+   */
+  public Flux<ServerSentEvent<BookAvailabilityDto>> streamAvailability() {
+    return webClient.get()
+        .uri("/library/api/books/availability/stream")
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .retrieve()
+        .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(),
+            ClientResponse::createException)
+        .bodyToFlux(new ParameterizedTypeReference<>() {});
+  }
+
   /**
    * Searches users from the backend using pagination.
    */
@@ -105,35 +140,62 @@ public class LibraryBackendClient {
         .bodyToMono(UserDto.class);
   }
 
-  public Flux<LoanDto> getBorrowedBooksOfUser(String userName) {
+  /**
+   * Retrieves a page of the user's loans, newest first. {@code after} is the nextCursor of the previous page or null.
+   */
+  public Mono<PageResponseDto<LoanDto>> getBorrowedBooksOfUser(String userName, String after) {
     return webClient.get()
-        .uri("/library/api/users/{userName}/loans", userName)
+        .uri(uriBuilder -> {
+          var builder = uriBuilder
+              .path("/library/api/users/{userName}/loans")
+              .queryParam("size", LOAN_PAGE_SIZE)
+              .queryParam("fields", LOAN_LIST_FIELDS);
+          if (after != null && !after.isEmpty()) {
+            builder.queryParam("after", after);
+          }
+          return builder.build(userName);
+        })
         .retrieve()
         .onStatus(s -> s.value() == 404, resp -> reactor.core.publisher.Mono.empty())
         .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(),
             ClientResponse::createException)
-        .bodyToFlux(LoanDto.class);
+        .bodyToMono(new ParameterizedTypeReference<>() {});
   }
 
-  public Mono<LoanDto> borrowBook(String isbn, String userName) {
+  /**
+   * Borrows the book. The request carries an idempotency key, the one of the browser request if given, otherwise a
+   * new one. So it is retried on connection errors, the backend replays the outcome if the first attempt got through.
+   */
+  public Mono<LoanDto> borrowBook(String isbn, String userName, String idempotencyKey) {
     return webClient.post()
         .uri("/library/api/users/{userName}/loans", userName)
+        .header(IDEMPOTENCY_KEY, idempotencyKeyOrNew(idempotencyKey))
         .body(Mono.just(isbn), String.class)
         .retrieve()
         .onStatus(s -> s.value() == 409, resp -> Mono.error(new BookAlreadyBorrowedException(isbn)))
         .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(),
             ClientResponse::createException)
-        .bodyToMono(LoanDto.class);
+        .bodyToMono(LoanDto.class)
+        .retryWhen(IDEMPOTENT_RETRY);
   }
 
-  public Mono<Void> returnBook(Long loanId, String userName) {
+  /**
+   * Returns the loan, with an idempotency key and retries like {@link #borrowBook(String, String, String)}.
+   */
+  public Mono<Void> returnBook(Long loanId, String userName, String idempotencyKey) {
     return webClient
         .delete()
         .uri("/library/api/users/{userName}/loans/{loanId}", userName, loanId)
+        .header(IDEMPOTENCY_KEY, idempotencyKeyOrNew(idempotencyKey))
         .retrieve()
         .onStatus(s -> s.is4xxClientError() || s.is5xxServerError(),
             ClientResponse::createException)
-        .bodyToMono(Void.class);
+        .bodyToMono(Void.class)
+        .retryWhen(IDEMPOTENT_RETRY);
+  }
+
+  private static String idempotencyKeyOrNew(String idempotencyKey) {
+    return idempotencyKey != null && !idempotencyKey.isBlank() ? idempotencyKey : UUID.randomUUID().toString();
   }
 
   public static class BookAlreadyBorrowedException extends RuntimeException {
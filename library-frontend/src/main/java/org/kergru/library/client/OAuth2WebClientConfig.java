@@ -4,6 +4,8 @@ import org.kergru.library.client.logging.LoggingExchangeFilterFunction;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
@@ -13,11 +15,13 @@ import org.springframework.security.oauth2.client.web.server.ServerOAuth2Authori
 import org.springframework.web.reactive.function.client.WebClient;
 
 /**
- * WebClient configuration with OAuth2 and logging interceptors.
+ * WebClient configuration with OAuth2, ETag caching and logging interceptors.
  */
 @Configuration
 public class OAuth2WebClientConfig {
 
+  private static final String SMILE_VALUE = "application/x-jackson-smile";
+
   /**
    * Responsible for Token Lifecycle Management
    * Defines supported token flows:
@@ -43,17 +47,21 @@ public class OAuth2WebClientConfig {
   }
 
   /**
-   * Configures WebClient with OAuth2 and logging interceptors.
+   * Configures WebClient with OAuth2, ETag caching and logging interceptors.
+   * Responses are requested as Smile (binary JSON), which is smaller and cheaper to decode, JSON remains the fallback.
    */
   @Bean
   WebClient oauth2WebClient(
       OAuth2ExchangeFilterFunction oauth2Interceptor,
+      ETagCachingExchangeFilterFunction eTagCachingInterceptor,
       LoggingExchangeFilterFunction loggingInterceptor,
       @Value("${library.backend.baseUrl}") String backendBaseUrl) {
 
     return WebClient.builder()
         .baseUrl(backendBaseUrl)
+        .defaultHeader(HttpHeaders.ACCEPT, SMILE_VALUE, MediaType.APPLICATION_JSON_VALUE + ";q=0.9")
         .filter(oauth2Interceptor) // interceptor for adding access token
+        .filter(eTagCachingInterceptor) // interceptor for conditional requests, needs the access token
         .filter(loggingInterceptor) // interceptor for logging
         .build();
   }
@@ -1,10 +1,13 @@
 package org.kergru.library.service;
 
+import java.util.List;
 import org.kergru.library.client.LibraryBackendClient;
+import org.kergru.library.model.BookAvailabilityDto;
 import org.kergru.library.model.BookDto;
 import org.kergru.library.model.LoanDto;
 import org.kergru.library.model.PageResponseDto;
 import org.kergru.library.model.UserDto;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -26,40 +29,48 @@ public class LibraryService {
     return backendClient.getBookByIsbn(isbn);
   }
 
+  public Flux<ServerSentEvent<BookAvailabilityDto>> streamAvailability() {
+    return backendClient.streamAvailability();
+  }
+
   public Mono<PageResponseDto<UserDto>> searchUsers(String searchString, int page, int size, String sortBy) {
     return backendClient.searchUsers(searchString, page, size, sortBy);
   }
 
-  public Mono<UserWithLoans> getUserWithLoans(String userName) {
+  /**
+   * Returns the user with a page of his loans, {@code after} is the nextCursor of the previous page or null.
+   */
+  public Mono<UserWithLoans> getUserWithLoans(String userName, String after) {
     return getUser(userName)
         .flatMap(user ->
-            getBorrowedBooksOfUser(userName)
-                .collectList()
+            getBorrowedBooksOfUser(userName, after)
                 .map(loans -> new UserWithLoans(
                     user,
-                    loans
-                )));
+                    loans.content(),
+                    loans.nextCursor()
+                ))
+                .defaultIfEmpty(new UserWithLoans(user, List.of(), null)));
   }
 
   public Mono<UserDto> getUser(String userName) {
     return backendClient.getUser(userName);
   }
 
-  public Flux<LoanDto> getBorrowedBooksOfUser(String userId) {
-    return backendClient.getBorrowedBooksOfUser(userId);
+  public Mono<PageResponseDto<LoanDto>> getBorrowedBooksOfUser(String userId, String after) {
+    return backendClient.getBorrowedBooksOfUser(userId, after);
   }
 
   /**
    * Borrows a book to a user. Endpoint is only available for the user himself.
    */
-  public Mono<LoanDto> borrowBook(String isbn, String userName) {
-    return backendClient.borrowBook(isbn, userName);
+  public Mono<LoanDto> borrowBook(String isbn, String userName, String idempotencyKey) {
+    return backendClient.borrowBook(isbn, userName, idempotencyKey);
   }
 
   /**
    * Returns a book to library. Endpoint is only available for the user himself.
    */
-  public Mono<Void> returnBook(Long loanId, String userName) {
-    return backendClient.returnBook(loanId, userName);
+  public Mono<Void> returnBook(Long loanId, String userName, String idempotencyKey) {
+    return backendClient.returnBook(loanId, userName, idempotencyKey);
   }
 }
\ No newline at end of file
@@ -4,6 +4,9 @@ import java.util.List;
 import org.kergru.library.model.LoanDto;
 import org.kergru.library.model.UserDto;
 
-public record UserWithLoans(UserDto user, List<LoanDto> loans) {
+/**
+ * User with a page of his loans, {@code nextCursor} points to the following page (null on the last page).
+ */
+public record UserWithLoans(UserDto user, List<LoanDto> loans, String nextCursor) {
 
 }
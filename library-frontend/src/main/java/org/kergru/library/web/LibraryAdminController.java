@@ -48,9 +48,13 @@ public class LibraryAdminController {
   }
 
   @GetMapping("/users/{userName}")
-  public Mono<String> getUser(@PathVariable String userName, Model model) {
+  public Mono<String> getUser(
+      @PathVariable String userName,
+      @RequestParam(required = false) String after,
+      Model model
+  ) {
 
-    return libraryService.getUserWithLoans(userName)
+    return libraryService.getUserWithLoans(userName, after)
         .flatMap(userWithLoans -> {
           model.addAttribute("userWithLoans", userWithLoans);
           return Mono.just("users/detail");
@@ -2,11 +2,14 @@ package org.kergru.library.web;
 
 import java.util.List;
 import java.util.Map;
+import org.kergru.library.client.LibraryBackendClient;
 import org.kergru.library.client.LibraryBackendClient.BookAlreadyBorrowedException;
+import org.kergru.library.model.BookAvailabilityDto;
 import org.kergru.library.model.LoanDto;
 import org.kergru.library.service.LibraryService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 import org.springframework.security.web.server.csrf.CsrfToken;
@@ -17,9 +20,11 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Controller
@@ -46,9 +51,13 @@ public class LibraryController {
   }
 
   @GetMapping("/me")
-  public Mono<String> me(Model model, @AuthenticationPrincipal OidcUser user) {
+  public Mono<String> me(
+      Model model,
+      @AuthenticationPrincipal OidcUser user,
+      @RequestParam(required = false) String after
+  ) {
 
-    return libraryService.getUserWithLoans(user.getPreferredUsername())
+    return libraryService.getUserWithLoans(user.getPreferredUsername(), after)
         .doOnNext(userWithLoans -> model.addAttribute("userWithLoans", userWithLoans))
         .thenReturn("users/detail")
         .switchIfEmpty(Mono.defer(() -> {
@@ -65,9 +74,13 @@ public class LibraryController {
   @PostMapping(
       value = "/me/borrowBook/{isbn}",
       produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<LoanDto> borrowBook(@PathVariable String isbn, @AuthenticationPrincipal OidcUser user) {
+  public Mono<LoanDto> borrowBook(
+      @PathVariable String isbn,
+      @AuthenticationPrincipal OidcUser user,
+      @RequestHeader(name = LibraryBackendClient.IDEMPOTENCY_KEY, required = false) String idempotencyKey
+  ) {
 
-    return libraryService.borrowBook(isbn, user.getPreferredUsername())
+    return libraryService.borrowBook(isbn, user.getPreferredUsername(), idempotencyKey)
         .onErrorResume(BookAlreadyBorrowedException.class, e -> {
           return Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()));
         });
@@ -82,9 +95,13 @@ public class LibraryController {
       value = "/me/returnBook/{loanId}",
       produces = MediaType.APPLICATION_JSON_VALUE
   )
-  public Mono<Void> returnBook(@PathVariable Long loanId, @AuthenticationPrincipal OidcUser user) {
+  public Mono<Void> returnBook(
+      @PathVariable Long loanId,
+      @AuthenticationPrincipal OidcUser user,
+      @RequestHeader(name = LibraryBackendClient.IDEMPOTENCY_KEY, required = false) String idempotencyKey
+  ) {
 
-    return libraryService.returnBook(loanId, user.getPreferredUsername());
+    return libraryService.returnBook(loanId, user.getPreferredUsername(), idempotencyKey);
   }
 
   @GetMapping("/books")
@@ -100,6 +117,16 @@ public class LibraryController {
         .thenReturn("books/list");
   }
 
+  /**
+   * Relays the availability changes of the backend to the book list.
+   * (Server-sent events for EventSource)
+   */
+  @ResponseBody
+  @GetMapping(value = "/books/availability/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<BookAvailabilityDto>> streamAvailability() {
+    return libraryService.streamAvailability();
+  }
+
   @GetMapping("/books/{isbn}")
   public Mono<String> getBook(@PathVariable String isbn, Model model) {
 
@@ -0,0 +1,17 @@
+document.addEventListener('DOMContentLoaded', () => {
+  const rows = document.querySelectorAll('tr[data-isbn]');
+  if (rows.length === 0 || !window.EventSource) return;
+
+  // live availability of the listed books, instead of reloading the list
+  const source = new EventSource('/library/ui/books/availability/stream');
+  source.addEventListener('availability', (event) => {
+    const change = JSON.parse(event.data);
+    const row = document.querySelector(`tr[data-isbn="${CSS.escape(change.isbn)}"]`);
+    if (!row) return;
+
+    row.querySelector('.badge-available')?.classList.toggle('d-none', !change.available);
+    row.querySelector('.badge-unavailable')?.classList.toggle('d-none', change.available);
+  });
+
+  window.addEventListener('beforeunload', () => source.close());
+});
@@ -40,11 +40,15 @@ document.addEventListener('DOMContentLoaded', () => {
 
     const csrf = resolveCsrf()
     console.log( csrf.headerName + "- " + csrf.token);
+    // gleicher Schlüssel bei Wiederholungen durch Browser oder Proxy, das Backend liefert dann die erste Antwort
+    const idempotencyKey = window.crypto?.randomUUID ? window.crypto.randomUUID() : `${Date.now()}-${Math.random()}`;
+    const headers = { 'Idempotency-Key': idempotencyKey };
+    if (csrf) headers[csrf.headerName] = csrf.token;
     try {
       const response = await fetch(`/library/ui/me/borrowBook/${encodeURIComponent(isbn)}`, {
         method: 'POST',
         credentials: 'same-origin',
-        headers: csrf ? { [csrf.headerName]: csrf.token } : {}
+        headers: headers
       });
 
       if (response.ok) {